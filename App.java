@@ -1,3 +1,4 @@
+import java.io.*;
 import java.util.*;
 
 /**
@@ -16,11 +17,13 @@ public class App {
     public static final String ANSI_WHITE = "\u001B[37m";
     
     // helpful array of known implementations of Player
-    private static final String[] knownPlayers = {
+    static final String[] knownPlayers = {
         "human",
         "random",
         "minimax",
         "pruning",
+        "mtdf",
+        "mcts",
     };
     
     /**
@@ -74,18 +77,89 @@ public class App {
      * @param board the reference to the board
      */
     private static Player createPlayer(String type, Board board) {
+        return createPlayer(type, board, new Random());
+    }
+
+    /**
+     * Maps legal user flags to the correct implementation of
+     * player, whose random decisions are made with the given
+     * random number generator, so that games can be replayed
+     * @param type the flag passed by the user
+     * @param board the reference to the board
+     * @param r the random number generator the player uses
+     * @return the player, null if the type is unknown
+     */
+    static Player createPlayer(String type, Board board, Random r) {
         if (type.equals("human"))
             return new Human(board);
         else if (type.equals("random"))
-            return new RandomBot(board);
+            return new RandomBot(board, r);
         else if (type.equals("minimax"))
-            return new MinimaxBot(board);
+            return new MinimaxBot(board, r);
         else if (type.equals("pruning"))
-            return new PruningBot(board);
+            return createPruningBot(board, r);
+        else if (type.equals("mtdf"))
+            return new MtdfBot(board, Integer.getInteger("checkers.table", PruningBot.TABLE_MEGABYTES), r);
+        else if (type.equals("mcts"))
+            return createMctsBot(board, r);
         else
             return null; // unknown type
     }
 
+    /**
+     * Helper method that creates a PruningBot, with a transposition
+     * table of the size in megabytes given by the checkers.table
+     * property, using the endgame tablebase named by the
+     * checkers.tablebase property and the opening book named by
+     * the checkers.book property if set, that ponders if the
+     * checkers.ponder property is true
+     * @param board the reference to the board
+     * @param r the random number generator the bot uses
+     */
+    private static Player createPruningBot(Board board, Random r) {
+        int megabytes = Integer.getInteger("checkers.table", PruningBot.TABLE_MEGABYTES);
+        PruningBot bot = new PruningBot(board, megabytes, 1, r);
+        bot.setPonder(Boolean.getBoolean("checkers.ponder"));
+        String path = System.getProperty("checkers.tablebase");
+        if (path != null) {
+            try {
+                bot.setTablebase(new Tablebase(path));
+            } catch (IOException e) {
+                System.out.println("Could not load tablebase: " + e.getMessage());
+            }
+        }
+
+        path = System.getProperty("checkers.book");
+        if (path != null) {
+            try {
+                bot.setOpeningBook(new OpeningBook(path));
+            } catch (IOException e) {
+                System.out.println("Could not load opening book: " + e.getMessage());
+            }
+        }
+        return bot;
+    }
+
+    /**
+     * Helper method that creates an MctsBot, that runs playouts on
+     * the number of threads given by the checkers.threads property
+     * (default 1), for at most the number of milliseconds given by
+     * the checkers.time property and the number of playouts given
+     * by the checkers.playouts property (default MctsBot.PLAYOUTS,
+     * 0 for no limit), with the exploration constant given by the
+     * checkers.exploration property if set
+     * @param board the reference to the board
+     * @param r the random number generator the bot uses
+     */
+    private static Player createMctsBot(Board board, Random r) {
+        MctsBot bot = new MctsBot(board, Integer.getInteger("checkers.threads", 1), r);
+        bot.setLimits(Long.getLong("checkers.time", 0), Long.getLong("checkers.playouts", MctsBot.PLAYOUTS));
+        String exploration = System.getProperty("checkers.exploration");
+        if (exploration != null)
+            bot.setExploration(Double.parseDouble(exploration));
+        return bot;
+    }
+
     /**
      * Helper method that runs the game loop
      * @param board the board to be played on
@@ -116,6 +190,10 @@ public class App {
             }
         }
         
+        // the game is over, stop anything the players still run
+        black.close();
+        red.close();
+
         // Print how the game ended
         printBoard(board);
         System.out.print("GAME OVER");
@@ -0,0 +1,250 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Analyses a file of game records in Portable Draughts Notation,
+ * searching every position of every game to a fixed depth with
+ * PruningBot, and writes the games back out with a comment after each
+ * turn holding the best turn, the value of the position and, if the
+ * turn played loses at least a threshold against the best one, the
+ * word blunder and how much it lost. Games are read one at a time and
+ * analysed on a pool of threads, each with its own bot whose
+ * transposition table stays warm between games, and are written out
+ * in the order they were read as soon as they and every game before
+ * them are done, so only a few games per thread are held in memory.
+ * If the checkers.tablebase property names an endgame tablebase,
+ * every bot looks positions up in it.
+ */
+public class BatchAnalysis {
+    // default file to write the analysed games to
+    private static final String PATH = "analysis.pdn";
+    // default depth positions are searched to
+    private static final int DEPTH = 8;
+    // default loss in value that makes a turn a blunder, a man is 100
+    private static final int BLUNDER = 100;
+    // memory budget of each bot's transposition table
+    private static final int TABLE_MEGABYTES = 16;
+    // games read ahead of the one being written, for each thread
+    private static final int WINDOW_GAMES = 4;
+
+    /**
+     * Analyses the games of a file and writes them to another
+     * @param args args[0] is the file to read, optional, args[1] is
+     *              the file to write (default analysis.pdn), args[2]
+     *              the search depth (default 8), args[3] the number of
+     *              threads (default the number of processors) and
+     *              args[4] the loss in value that makes a turn a
+     *              blunder (default 100)
+     * @throws IOException if a file can't be read or written
+     * @throws InterruptedException if interrupted while analysing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("usage: BatchAnalysis <games.pdn> [output] [depth] [threads] [blunder]");
+            return;
+        }
+        String input = args[0];
+        String output = (args.length > 1) ? args[1] : PATH;
+        int depth = (args.length > 2) ? Integer.parseInt(args[2]) : DEPTH;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        int blunder = (args.length > 4) ? Integer.parseInt(args[4]) : BLUNDER;
+
+        Tablebase tablebase = null;
+        String path = System.getProperty("checkers.tablebase");
+        if (path != null) {
+            try {
+                tablebase = new Tablebase(path);
+            } catch (IOException e) {
+                System.out.println("Could not load tablebase: " + e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        AtomicLong positions = new AtomicLong();
+        AtomicLong blunders = new AtomicLong();
+        Tablebase endgames = tablebase;
+        ThreadLocal<Analyst> analysts = ThreadLocal.withInitial(
+                () -> new Analyst(depth, blunder, endgames, positions, blunders));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int games = 0;
+        int skipped = 0;
+        try (PdnReader reader = new PdnReader(Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8));
+                PdnWriter writer = new PdnWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+            Deque<Future<PdnGame>> window = new ArrayDeque<>();
+            while (true) {
+                PdnGame game;
+                try {
+                    game = reader.next();
+                } catch (IllegalArgumentException e) {
+                    System.out.println("skipped " + e.getMessage());
+                    skipped++;
+                    continue;
+                }
+                if (game == null)
+                    break;
+
+                if (window.size() >= threads * WINDOW_GAMES)
+                    skipped += write(writer, window.removeFirst());
+                window.add(pool.submit(() -> analysts.get().analyse(game)));
+                games++;
+            }
+            while (!window.isEmpty())
+                skipped += write(writer, window.removeFirst());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d positions from %d games in %.1f s (%.0f positions/s), %d blunders, "
+                + "%d games skipped, written to %s%n", positions.get(), games, seconds,
+                positions.get() / seconds, blunders.get(), skipped, output);
+    }
+
+    /**
+     * Helper method that waits for a game to be analysed and
+     * writes it, a game whose analysis failed is left out
+     * @param writer where games are written
+     * @param f the game being analysed
+     * @return 1 if the game was left out, 0 if it was written
+     * @throws IOException if the game can't be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static int write(PdnWriter writer, Future<PdnGame> f) throws IOException, InterruptedException {
+        PdnGame game;
+        try {
+            game = f.get();
+        } catch (ExecutionException e) {
+            System.out.println("analysis failed: " + e.getCause());
+            return 1;
+        }
+        writer.write(game);
+        writer.flush();
+        return 0;
+    }
+
+    /**
+     * One thread's bot, and the board it holds a reference to,
+     * which positions are copied onto to be searched
+     */
+    private static final class Analyst {
+        // the position being searched
+        private final Board board;
+        // the bot searching it
+        private final PruningBot bot;
+        // the loss in value that makes a turn a blunder
+        private final int blunder;
+        // depth, for the annotator tag
+        private final int depth;
+        // totals of every thread
+        private final AtomicLong positions;
+        private final AtomicLong blunders;
+        // whether the last call to search() searched, a forced turn
+        // is played without searching
+        private boolean searched;
+
+        /**
+         * Creates an analyst
+         * @param depth the depth positions are searched to
+         * @param blunder the loss in value that makes a turn a blunder
+         * @param tablebase the endgame tablebase, null for none
+         * @param positions the total of positions searched
+         * @param blunders the total of blunders found
+         */
+        Analyst(int depth, int blunder, Tablebase tablebase, AtomicLong positions, AtomicLong blunders) {
+            this.board = new Board();
+            this.bot = new PruningBot(board, TABLE_MEGABYTES, 1, new Random(0));
+            this.bot.setLimits(depth, 0, 0);
+            this.bot.setTablebase(tablebase);
+            this.blunder = blunder;
+            this.depth = depth;
+            this.positions = positions;
+            this.blunders = blunders;
+        }
+
+        /**
+         * Searches every position of a game and adds a comment after
+         * each turn, after any comment it already had
+         * @param game the game to analyse, which is changed
+         * @return the game
+         */
+        PdnGame analyse(PdnGame game) {
+            int n = game.size();
+            // value of the position before each turn and at the end,
+            // and whether it is known
+            int[] values = new int[n + 1];
+            boolean[] known = new boolean[n + 1];
+            List<List<Move>> best = new ArrayList<>();
+            Color[] movers = new Color[n];
+
+            Board position = game.getStart();
+            for (int i = 0; i <= n; i++) {
+                if (!position.gameOver()) {
+                    best.add(search(position));
+                    values[i] = bot.getValue();
+                    known[i] = searched;
+                    if (searched)
+                        positions.incrementAndGet();
+                } else {
+                    best.add(null);
+                    values[i] = position.getScore();
+                    known[i] = true;
+                }
+                if (i < n) {
+                    movers[i] = position.getTurn();
+                    for (Move m : game.getTurn(i))
+                        position.move(m);
+                }
+            }
+
+            // a position with a forced turn is not searched, and is
+            // worth what the position after the turn is
+            for (int i = n; i >= 0; i--) {
+                if (!known[i])
+                    values[i] = (i == n) ? position.getScore() : values[i + 1];
+            }
+
+            for (int i = 0; i < n; i++) {
+                StringBuilder comment = new StringBuilder();
+                if (game.getComment(i) != null)
+                    comment.append(game.getComment(i)).append(' ');
+                comment.append("best ").append(PdnWriter.format(best.get(i)))
+                        .append(" value ").append(values[i]);
+
+                int loss = (movers[i] == Color.BLACK) ? values[i] - values[i + 1] : values[i + 1] - values[i];
+                if (loss >= blunder && !game.getTurn(i).equals(best.get(i))) {
+                    comment.append(" blunder ").append(loss);
+                    blunders.incrementAndGet();
+                }
+                game.setComment(i, comment.toString());
+            }
+            game.getTags().put("Annotator", "BatchAnalysis depth " + depth);
+            return game;
+        }
+
+        /**
+         * Helper method that finds the best turn in a position, the
+         * bot plays the rest of a multi-jump without searching, and
+         * does not search at all if the whole turn is forced
+         * @param position the position, at the start of a turn
+         * @return the moves of the best turn
+         */
+        private List<Move> search(Board position) {
+            board.setPosition(position.getBlack(), position.getRed(), position.getKings(), position.getTurn());
+            SearchStats last = bot.getStats();
+            Color turn = board.getTurn();
+            List<Move> moves = new ArrayList<>();
+            do {
+                Move m = bot.getMove();
+                moves.add(m);
+                board.move(m);
+            } while (board.getTurn() == turn && !board.gameOver());
+            searched = (bot.getStats() != last);
+            return moves;
+        }
+    }
+}
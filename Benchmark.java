@@ -0,0 +1,335 @@
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Benchmarks of move generation, evaluation and search, run on a
+ * fixed set of positions taken from seeded random games, so that
+ * results can be compared between changes. Each suite is warmed up
+ * and then timed in samples of a fixed number of operations, and
+ * reports its throughput, the latency percentiles of its samples,
+ * the bytes it allocates per operation and the garbage collections
+ * it caused. The search suites reuse one bot, which is set to the
+ * next position and made to forget earlier searches outside the timed
+ * operation, so that they time the search and not the allocation of
+ * the bot's table. The compare suite instead searches every position
+ * once with each search engine, and prints the nodes and time each
+ * took.
+ */
+public class Benchmark {
+    // number of positions benchmarks are run on
+    private static final int POSITIONS = 64;
+    // seed for the random games the positions are taken from
+    private static final long SEED = 7;
+    // time spent warming up and measuring each suite
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long MEASURE_MILLIS = 5000;
+    // depth of the fixed depth searches
+    private static final int SEARCH_DEPTH = 8;
+
+    // results of the benchmarked operations, kept so that the
+    // JIT can't remove the work that produced them
+    private static volatile long sink;
+
+    /**
+     * Runs the benchmarks
+     * @param args optional, the names of the suites to run,
+     *              all suites are run if none are given
+     */
+    public static void main(String[] args) {
+        List<Board> positions = createPositions();
+        List<Move[]> moves = new ArrayList<>();
+        for (Board position : positions)
+            moves.add(position.getLegalMoves().toArray(new Move[0]));
+
+        Map<String, Suite> suites = new LinkedHashMap<>();
+        suites.put("legalMoves", new Suite(1000,
+                i -> new Board(positions.get(i % POSITIONS)).getLegalMoves().size()));
+        suites.put("move", new Suite(1000, i -> {
+            Move[] legal = moves.get(i % POSITIONS);
+            return new Board(positions.get(i % POSITIONS), legal[(i / POSITIONS) % legal.length]).getKey();
+        }));
+        // copies are kept, or the JIT would never allocate them
+        Board[] copies = new Board[POSITIONS];
+        suites.put("copy", new Suite(1000, i -> {
+            copies[i % POSITIONS] = new Board(positions.get(i % POSITIONS));
+            return copies[i % POSITIONS].getKey();
+        }));
+        suites.put("score", new Suite(1000,
+                i -> positions.get(i % POSITIONS).getScore()));
+        Board minimaxBoard = new Board();
+        MinimaxBot minimax = new MinimaxBot(minimaxBoard);
+        suites.put("minimax", new Suite(1,
+                i -> prepare(minimax, minimaxBoard, positions.get(i % POSITIONS)),
+                i -> minimax.getMove().getEnd()));
+        Board pruningBoard = new Board();
+        PruningBot pruning = new PruningBot(pruningBoard, 4);
+        pruning.setLimits(SEARCH_DEPTH, 0, 0);
+        suites.put("pruning", new Suite(1,
+                i -> prepare(pruning, pruningBoard, positions.get(i % POSITIONS)),
+                i -> pruning.getMove().getEnd()));
+        Board mtdfBoard = new Board();
+        Random mtdfRandom = new Random();
+        MtdfBot mtdf = new MtdfBot(mtdfBoard, 4, mtdfRandom);
+        mtdf.setDepth(SEARCH_DEPTH);
+        suites.put("mtdf", new Suite(1, i -> {
+            mtdfRandom.setSeed(i);
+            prepare(mtdf, mtdfBoard, positions.get(i % POSITIONS));
+        }, i -> mtdf.getMove().getEnd()));
+
+        List<String> names = (args.length > 0) ? Arrays.asList(args) : new ArrayList<>(suites.keySet());
+        if (names.contains("compare")) {
+            compare(positions);
+            names = new ArrayList<>(names);
+            names.remove("compare");
+            if (names.isEmpty())
+                return;
+        }
+        System.out.printf("%-12s %14s %12s %12s %12s %12s %12s %10s %6s%n", "suite", "ops/s",
+                "p50 ns/op", "p90 ns/op", "p99 ns/op", "p99.9 ns/op", "max ns/op", "B/op", "gcs");
+        for (String name : names) {
+            Suite suite = suites.get(name);
+            if (suite == null) {
+                System.out.println("Unknown suite: " + name + ", known suites are " + suites.keySet());
+                return;
+            }
+            suite.run(name);
+        }
+    }
+
+    /**
+     * Helper method that sets a bot's board to a position, and makes
+     * the bot forget its earlier searches, as if it were new
+     * @param bot the bot
+     * @param board the board the bot holds a reference to
+     * @param position the position to search next
+     */
+    private static void prepare(Player bot, Board board, Board position) {
+        board.setPosition(position.getBlack(), position.getRed(), position.getKings(), position.getTurn());
+        bot.newGame();
+    }
+
+    /**
+     * A benchmarked operation, run on the i'th operation of a run,
+     * timed in samples of batch operations
+     */
+    private static final class Suite {
+        // number of operations per timed sample
+        private final int batch;
+        // run before each operation and not timed, null if none
+        private final IntConsumer setup;
+        // the operation, which returns a result to be kept
+        private final IntToLongFunction operation;
+        // time spent in the timed operations of the last call to sample()
+        private long timed;
+
+        /**
+         * Creates a suite
+         * @param batch the number of operations per timed sample
+         * @param operation the operation to benchmark
+         */
+        Suite(int batch, IntToLongFunction operation) {
+            this(batch, null, operation);
+        }
+
+        /**
+         * Creates a suite with an untimed step before each operation
+         * @param batch the number of operations per timed sample
+         * @param setup run with the number of each operation before
+         *              the sample it is in is timed
+         * @param operation the operation to benchmark
+         */
+        Suite(int batch, IntConsumer setup, IntToLongFunction operation) {
+            this.batch = batch;
+            this.setup = setup;
+            this.operation = operation;
+        }
+
+        /**
+         * Warms up and measures the suite, and prints the results
+         * @param name the name of the suite
+         */
+        void run(String name) {
+            sample(WARMUP_MILLIS, null);
+
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long thread = Thread.currentThread().getId();
+            long[] samples = new long[1 << 16];
+            long gcs = collections();
+            long allocated = threads.getThreadAllocatedBytes(thread);
+
+            int count = sample(MEASURE_MILLIS, samples);
+            long elapsed = timed;
+
+            allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+            gcs = collections() - gcs;
+
+            long ops = (long) count * batch;
+            int kept = Math.min(count, samples.length);
+            Arrays.sort(samples, 0, kept);
+            System.out.printf("%-12s %14.1f %12d %12d %12d %12d %12d %10d %6d%n", name,
+                    ops * 1e9 / elapsed,
+                    percentile(samples, kept, 0.5) / batch,
+                    percentile(samples, kept, 0.9) / batch,
+                    percentile(samples, kept, 0.99) / batch,
+                    percentile(samples, kept, 0.999) / batch,
+                    samples[kept - 1] / batch,
+                    allocated / ops, gcs);
+        }
+
+        /**
+         * Helper method that times samples of the operation for
+         * the given time, and adds up the time they took in timed
+         * @param millis how long to run for
+         * @param samples where to record the time of each sample, in
+         *              nanoseconds, until it is full, null to not record
+         * @return the number of samples taken
+         */
+        private int sample(long millis, long[] samples) {
+            long end = System.nanoTime() + millis * 1000000;
+            int count = 0;
+            int i = 0;
+            long result = 0;
+            timed = 0;
+            long now = System.nanoTime();
+            while (now < end) {
+                if (setup != null) {
+                    for (int j = 0; j < batch; j++)
+                        setup.accept(i + j);
+                    now = System.nanoTime();
+                }
+                for (int j = 0; j < batch; j++)
+                    result += operation.applyAsLong(i++);
+
+                long then = now;
+                now = System.nanoTime();
+                timed += now - then;
+                if (samples != null && count < samples.length)
+                    samples[count] = now - then;
+                count++;
+            }
+            sink += result;
+            return count;
+        }
+    }
+
+    /**
+     * Helper method that searches every position to SEARCH_DEPTH
+     * with plain alpha-beta, PVS and MTD(f), each with an empty
+     * table, and prints the nodes and time each took in total and
+     * how many values agreed with plain alpha-beta. Positions with
+     * one legal move aren't searched, and the whole set is
+     * searched once first to warm up
+     * @param positions the positions to search
+     */
+    private static void compare(List<Board> positions) {
+        String[] engines = {"alphabeta", "pvs", "mtdf"};
+        // the bots are made once, so their tables aren't allocated
+        // in the timed searches
+        Board[] boards = new Board[engines.length];
+        Random[] randoms = new Random[engines.length];
+        Engine[] bots = new Engine[engines.length];
+        for (int e = 0; e < engines.length; e++) {
+            boards[e] = new Board();
+            randoms[e] = new Random();
+            if (engines[e].equals("mtdf")) {
+                MtdfBot bot = new MtdfBot(boards[e], 4, randoms[e]);
+                bot.setDepth(SEARCH_DEPTH);
+                bots[e] = bot;
+            } else {
+                PruningBot bot = new PruningBot(boards[e], 4, 1, randoms[e]);
+                bot.setLimits(SEARCH_DEPTH, 0, 0);
+                bot.setPvs(engines[e].equals("pvs"));
+                bots[e] = bot;
+            }
+        }
+        long[][] totals = new long[engines.length][3];
+        for (int round = 0; round < 2; round++) {
+            for (long[] total : totals)
+                Arrays.fill(total, 0);
+
+            for (Board position : positions) {
+                if (position.getLegalMoves().size() == 1)
+                    continue;
+                int expected = 0;
+                for (int e = 0; e < engines.length; e++) {
+                    randoms[e].setSeed(SEED);
+                    prepare(bots[e], boards[e], position);
+                    long start = System.nanoTime();
+                    long[] result = search(bots[e]);
+                    totals[e][1] += System.nanoTime() - start;
+                    totals[e][0] += result[0];
+                    if (e == 0)
+                        expected = (int) result[1];
+                    if (result[1] == expected)
+                        totals[e][2]++;
+                }
+            }
+        }
+
+        System.out.printf("%-12s %14s %12s %12s %10s%n", "engine", "nodes", "ms", "nodes/ms", "agree");
+        for (int e = 0; e < engines.length; e++) {
+            System.out.printf("%-12s %14d %12d %12d %10d%n", engines[e], totals[e][0],
+                    totals[e][1] / 1000000, totals[e][0] * 1000000 / Math.max(totals[e][1], 1),
+                    totals[e][2]);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Helper method that searches the position on a bot's board
+     * @param bot the bot
+     * @return the nodes searched and the value found
+     */
+    private static long[] search(Engine bot) {
+        sink += bot.getMove().getEnd();
+        return new long[] {bot.getStats().getNodes(), bot.getValue()};
+    }
+
+    /**
+     * Helper method that returns a percentile of sorted samples
+     * @param sorted the samples, sorted
+     * @param count the number of samples
+     * @param fraction the percentile, as a fraction
+     * @return the sample at that percentile
+     */
+    private static long percentile(long[] sorted, int count, double fraction) {
+        return sorted[Math.min(count - 1, (int) (fraction * count))];
+    }
+
+    /**
+     * Helper method that returns the number of garbage collections
+     * so far
+     * @return the number of collections by every collector
+     */
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(gc.getCollectionCount(), 0);
+        return total;
+    }
+
+    /**
+     * Helper method that creates the positions to benchmark on,
+     * from random games so that they cover the opening, middle
+     * and end of a game
+     * @return the positions to benchmark on
+     */
+    private static List<Board> createPositions() {
+        Random r = new Random(SEED);
+        List<Board> result = new ArrayList<>();
+        while (result.size() < POSITIONS) {
+            Board board = new Board();
+            int plies = r.nextInt(60);
+            for (int i = 0; i < plies && !board.gameOver(); i++) {
+                List<Move> moves = new ArrayList<>(board.getLegalMoves());
+                moves.sort(Comparator.comparing(Move::toString));
+                board.move(moves.get(r.nextInt(moves.size())));
+            }
+            if (!board.gameOver())
+                result.add(board);
+        }
+        return result;
+    }
+}
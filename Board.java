@@ -27,24 +27,203 @@ public final class Board {
      * [29] [  ] [30] [  ] [31] [  ] [32] [  ]
      */
 
+    /*
+     * Pieces are stored as bitboards, where bit (place - 1) of a
+     * mask is set if that place holds a matching piece. Moves are
+     * generated by shifting whole masks in one of four directions,
+     * DOWN_LEFT and DOWN_RIGHT go towards higher places (black's
+     * forward), UP_LEFT and UP_RIGHT go towards lower places (red's
+     * forward)
+     *
+     * The searches use moves packed into ints instead of Move objects,
+     * bits 0-4 hold the index (place - 1) of the start, bits 5-9 the
+     * index of the end, bits 10-14 the index of the jumped piece and
+     * bit 15 is set if the move is a jump
+     *
+     * A whole turn, every jump of a multi-jump at once, is packed into
+     * a long, bits 0-31 hold the mask of captured pieces, bits 32-36
+     * the index of the start and bits 37-41 the index of the end. Two
+     * ways through the same jumps to the same place are the same turn
+     *
+     * Every position also has a Zobrist key, the xor of a random
+     * number for each piece (by color, king and place), for red
+     * to move and for the piece in the middle of a multi-jump,
+     * which makeMove() and unmakeMove() keep up to date
+     *
+     * The evaluation is kept up to date the same way, as the sum of
+     * a value for each piece (by color, king and place) for the
+     * middlegame and another for the endgame. getScore() blends the
+     * two by how many pieces are left, so it never scans the board
+     */
+
     /**
      * The width of the board
      */
     public static final int WIDTH = 8;
 
+    /**
+     * The most legal moves a position can have (every piece
+     * a king with all four directions open), the size needed
+     * for buffers passed to generateMoves()
+     */
+    static final int MAX_MOVES = 48;
+
+    /**
+     * The most pieces on the board, which also bounds the number
+     * of jumps that can be made in a row
+     */
+    static final int MAX_PIECES = 24;
+
+    /**
+     * The most turns generateTurns() writes, the size needed for
+     * buffers passed to it
+     */
+    static final int MAX_TURNS = 128;
+
+    // Log2 of the number of slots in the set of jump turns found by
+    // generateTurns(), which has twice MAX_TURNS slots
+    private static final int TURN_BITS = 8;
+
     // Half the width of the board / number of legal spaces per row
     private static final int H_WIDTH = WIDTH / 2;
-    // Run expensive tests?
-    private static final boolean DEBUG = true;
-
-    // Container for pieces
-    private Piece[] board;
-    // Current legal jumps, empty if none
-    private Set<Move> jumps;
-    // Current legal steps, empty if none
-    private Set<Move> steps;
+    // Number of legal spaces on the board, must fit in an int mask
+    private static final int PLACES = (WIDTH * WIDTH) / 2;
+    // Run expensive tests? Only when assertions are enabled for Board
+    // (java -ea or -ea:Board), a constant so that the tests cost
+    // nothing otherwise
+    private static final boolean DEBUG = Board.class.desiredAssertionStatus();
+
+    // Directions a piece can move in
+    private static final int DOWN_LEFT = 0;
+    private static final int DOWN_RIGHT = 1;
+    private static final int UP_LEFT = 2;
+    private static final int UP_RIGHT = 3;
+
+    // Neighbor of each place in each direction, as a mask (0 if off the board)
+    private static final int[][] NEIGHBOR = new int[4][PLACES];
+    // Landing place of a jump from each place in each direction (0 if off the board)
+    private static final int[][] LANDING = new int[4][PLACES];
+    // Places that are H_WIDTH away from their neighbor in each direction
+    private static final int[] SHIFT_WIDTH = new int[4];
+    // Places that are SHIFT[dir] away from their neighbor in each direction
+    private static final int[] SHIFT_OTHER = new int[4];
+    private static final int[] SHIFT = {H_WIDTH - 1, H_WIDTH + 1, H_WIDTH + 1, H_WIDTH - 1};
+    // Layout of packed moves
+    private static final int INDEX_MASK = 0x1F;
+    private static final int END_SHIFT = 5;
+    private static final int JUMPED_SHIFT = 10;
+    private static final int JUMP_FLAG = 1 << 15;
+    // Layout of packed turns
+    private static final int TURN_START_SHIFT = 32;
+    private static final int TURN_END_SHIFT = 37;
+    // Layout of undo records returned by makeMove()
+    private static final int UNDO_JUMPER_SHIFT = 32;
+    private static final long UNDO_CROWNED = 1L << 38;
+    private static final long UNDO_SWAPPED = 1L << 39;
+    // Rows where red and black pieces become kings
+    private static final int RED_KING_ROW = (1 << H_WIDTH) - 1;
+    private static final int BLACK_KING_ROW = RED_KING_ROW << (PLACES - H_WIDTH);
+    // Zobrist keys for each kind of piece (black, black king, red, red king)
+    // at each place, for red's turn and for each place a multi-jump is at.
+    // Seeded so that keys are the same in every run
+    private static final long[][] PIECE_KEYS = new long[4][PLACES];
+    private static final long[] JUMPER_KEYS = new long[PLACES];
+    private static final long RED_TURN_KEY;
+    // Values of each kind of piece at each place in the middlegame and
+    // the endgame, positive for black and negative for red. Material,
+    // then bonuses for men that advance, men that guard the back row
+    // (in the middlegame) and pieces in the center, where they have
+    // more moves, in place of counting moves
+    private static final int[][] MIDDLEGAME_VALUES = new int[4][PLACES];
+    private static final int[][] ENDGAME_VALUES = new int[4][PLACES];
+    private static final int MAN_VALUE = 100;
+    private static final int KING_MIDDLEGAME_VALUE = 250;
+    private static final int KING_ENDGAME_VALUE = 400;
+    private static final int ADVANCE_MIDDLEGAME_BONUS = 2;
+    private static final int ADVANCE_ENDGAME_BONUS = 6;
+    private static final int BACK_ROW_BONUS = 15;
+    private static final int CENTER_BONUS = 8;
+    private static final int KING_CENTER_ENDGAME_BONUS = 12;
+    private static final int EDGE_PENALTY = 6;
+
+    static {
+        for (int i = 0; i < PLACES; i++) {
+            int row = i / H_WIDTH;
+            int col = 2 * (i % H_WIDTH) + (row % 2 == 0 ? 1 : 0);
+
+            for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++) {
+                int dRow = (dir == DOWN_LEFT || dir == DOWN_RIGHT) ? 1 : -1;
+                int dCol = (dir == DOWN_LEFT || dir == UP_LEFT) ? -1 : 1;
+                NEIGHBOR[dir][i] = maskAt(row + dRow, col + dCol);
+                LANDING[dir][i] = maskAt(row + 2 * dRow, col + 2 * dCol);
+
+                if (NEIGHBOR[dir][i] != 0) {
+                    int offset = Integer.numberOfTrailingZeros(NEIGHBOR[dir][i]) - i;
+                    if (Math.abs(offset) == H_WIDTH)
+                        SHIFT_WIDTH[dir] |= 1 << i;
+                    else
+                        SHIFT_OTHER[dir] |= 1 << i;
+                }
+            }
+        }
+
+        Random keys = new Random(0x5EED);
+        for (int kind = 0; kind < PIECE_KEYS.length; kind++) {
+            for (int i = 0; i < PLACES; i++)
+                PIECE_KEYS[kind][i] = keys.nextLong();
+        }
+        for (int i = 0; i < PLACES; i++)
+            JUMPER_KEYS[i] = keys.nextLong();
+        RED_TURN_KEY = keys.nextLong();
+
+        for (int i = 0; i < PLACES; i++) {
+            // rows and columns from black's side, red's values are
+            // black's on the board turned around
+            int row = i / H_WIDTH;
+            int col = 2 * (i % H_WIDTH) + (row % 2 == 0 ? 1 : 0);
+            boolean center = (row >= 2 && row <= 5 && col >= 2 && col <= 5);
+            boolean edge = (col == 0 || col == WIDTH - 1);
+
+            int man = MAN_VALUE + (center ? CENTER_BONUS : 0) - (edge ? EDGE_PENALTY : 0);
+            int manMiddlegame = man + row * ADVANCE_MIDDLEGAME_BONUS + ((row == 0) ? BACK_ROW_BONUS : 0);
+            int manEndgame = man + row * ADVANCE_ENDGAME_BONUS;
+            int kingMiddlegame = KING_MIDDLEGAME_VALUE + (center ? CENTER_BONUS : 0) - (edge ? EDGE_PENALTY : 0);
+            int kingEndgame = KING_ENDGAME_VALUE + (center ? KING_CENTER_ENDGAME_BONUS : 0) - (edge ? EDGE_PENALTY : 0);
+
+            MIDDLEGAME_VALUES[0][i] = manMiddlegame;
+            MIDDLEGAME_VALUES[1][i] = kingMiddlegame;
+            MIDDLEGAME_VALUES[2][PLACES - 1 - i] = -manMiddlegame;
+            MIDDLEGAME_VALUES[3][PLACES - 1 - i] = -kingMiddlegame;
+            ENDGAME_VALUES[0][i] = manEndgame;
+            ENDGAME_VALUES[1][i] = kingEndgame;
+            ENDGAME_VALUES[2][PLACES - 1 - i] = -manEndgame;
+            ENDGAME_VALUES[3][PLACES - 1 - i] = -kingEndgame;
+        }
+    }
+
+    // Bitboards of black pieces, red pieces and kings of either color
+    private int black;
+    private int red;
+    private int kings;
+    // Index of the piece that has to keep jumping, -1 if none
+    private int jumper;
+    // Current legal moves, null until they are asked for
+    private Set<Move> legalMoves;
     // Which color's turn it is
     private Color turn;
+    // Zobrist key of the position
+    private long key;
+    // Sum of the values of the pieces, for the middlegame and endgame
+    private int middlegame;
+    private int endgame;
+    // Buffers for the packed jumps at each hop of a multi-jump, used
+    // by generateTurns() and turnPath(), null until needed
+    private int[][] hops;
+    // Slots of the set of jump turns found so far, a slot is in use
+    // when its stamp is the current one, null until needed
+    private long[] foundTurns;
+    private int[] foundStamps;
+    private int stamp;
 
     /**
      * Creates a new board
@@ -52,24 +231,93 @@ public final class Board {
     public Board() {
         // black always goes first
         this.turn = Color.BLACK;
-
-        int numOfPlaces = (WIDTH * WIDTH) / 2;
-        board = new Piece[numOfPlaces];
+        this.jumper = -1;
 
         // add black pieces
         for (int i = 0; i < ((H_WIDTH - 1) * (WIDTH / 2)); i++) {
-            board[i] = new Piece(Color.BLACK);
+            black |= 1 << i;
         }
 
         // add red pieces
-        for (int i = (H_WIDTH + 1) * H_WIDTH; i < board.length; i++) {
-            board[i] = new Piece(Color.RED);
+        for (int i = (H_WIDTH + 1) * H_WIDTH; i < PLACES; i++) {
+            red |= 1 << i;
         }
 
-        updateLegalMoves();
-        // checkRep included in updateLegalMoves
+        this.key = computeKey();
+        computeValues();
+        checkRep();
     }
 
+    /**
+     * Creates a board holding the given position, with no
+     * multi-jump in progress
+     * @param black the mask of black pieces, bit (place - 1)
+     *              is set if there is one at place
+     * @param red the mask of red pieces
+     * @param kings the mask of kings of either color
+     * @param turn which color's turn it is
+     * @throws IllegalArgumentException if the position is not
+     *              legal, pieces overlap, a king is not a piece
+     *              or a piece is on its own king row without
+     *              being a king
+     */
+    Board(int black, int red, int kings, Color turn) {
+        if ((black & red) != 0 || (kings & ~(black | red)) != 0
+                || (black & ~kings & BLACK_KING_ROW) != 0 || (red & ~kings & RED_KING_ROW) != 0)
+            throw new IllegalArgumentException("illegal position");
+        setPosition(black, red, kings, turn);
+        checkRep();
+    }
+
+    /**
+     * Creates a board from a position in PDN FEN notation, such
+     * as "B:W21,22,K30:B1,2,K5", the color to move then the places
+     * of each color's pieces, kings marked with a K. As in PDN, red
+     * is called white (W), red is the color on places 21-32 at the
+     * start of the game
+     * @param fen the position in FEN notation
+     * @return the board holding the position
+     * @throws IllegalArgumentException if fen is not a legal
+     *              position in FEN notation
+     */
+    public static Board fromFen(String fen) {
+        String[] fields = fen.trim().split(":");
+        if (fields.length != 3 || !fields[0].trim().matches("[BW]"))
+            throw new IllegalArgumentException("bad FEN: " + fen);
+
+        // one list of pieces for each color, in either order
+        String pieces = fields[1].trim() + " " + fields[2].trim();
+        if (!pieces.matches("W[^ ]* B[^ ]*|B[^ ]* W[^ ]*"))
+            throw new IllegalArgumentException("bad FEN: " + fen);
+
+        int[] masks = new int[2]; // black, red
+        int kings = 0;
+        for (int i = 1; i < fields.length; i++) {
+            String field = fields[i].trim();
+            int color = (field.charAt(0) == 'B') ? 0 : 1;
+
+            for (String piece : field.substring(1).split(",")) {
+                piece = piece.trim();
+                if (piece.isEmpty())
+                    continue;
+                boolean king = piece.startsWith("K");
+                int place;
+                try {
+                    place = Integer.parseInt(king ? piece.substring(1) : piece);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad FEN: " + fen);
+                }
+                if (place < 1 || place > PLACES)
+                    throw new IllegalArgumentException("bad FEN: " + fen);
+                masks[color] |= 1 << (place - 1);
+                if (king)
+                    kings |= 1 << (place - 1);
+            }
+        }
+
+        return new Board(masks[0], masks[1], kings,
+                fields[0].trim().equals("B") ? Color.BLACK : Color.RED);
+    }
 
     /**
      * Copy constructor which returns a deep copy of
@@ -77,15 +325,15 @@ public final class Board {
      * @param b the board to be copied
      */
     public Board(Board b) {
-        // just copys array, Pieces are immutable
-        this.board = new Piece[b.board.length];
-        for (int i = 0; i < b.board.length; i++) {
-            this.board[i] = b.board[i];
-        }
-
+        // just copys the masks, b already passed checkRep
+        this.black = b.black;
+        this.red = b.red;
+        this.kings = b.kings;
+        this.jumper = b.jumper;
         this.turn = b.turn;
-
-        updateLegalMoves();
+        this.key = b.key;
+        this.middlegame = b.middlegame;
+        this.endgame = b.endgame;
     }
 
     /**
@@ -96,12 +344,14 @@ public final class Board {
      * @param m the move to be made on the copied board
      */
     public Board(Board b, Move m) {
-        this.board = new Piece[b.board.length];
-        for (int i = 0; i < b.board.length; i++)
-            this.board[i] = b.board[i];
-        
+        this.black = b.black;
+        this.red = b.red;
+        this.kings = b.kings;
+        this.jumper = b.jumper;
         this.turn = b.turn;
-        updateLegalMoves();
+        this.key = b.key;
+        this.middlegame = b.middlegame;
+        this.endgame = b.endgame;
 
         this.move(m);
     }
@@ -111,30 +361,32 @@ public final class Board {
      * through the use of assert statements
      */
     private void checkRep() {
-        assert board != null;
-        assert jumps != null;
-        assert steps != null;
         assert turn != null;
 
         // non-constant tests
         if (DEBUG) {
+            // no place holds two pieces, kings are pieces
+            assert (black & red) == 0;
+            assert (kings & ~(black | red)) == 0;
+
             // no non-king reds in blacks final row
-            for (int i = 0; i < H_WIDTH; i++) {
-                if (hasPieceAt(i + 1) && board[i].color == Color.RED)
-                    assert board[i].isKing;
-            }
+            assert (red & ~kings & RED_KING_ROW) == 0;
 
             // no non-king blacks in reds final row
-            for (int i = getNumOfPlaces() - H_WIDTH; i < getNumOfPlaces(); i++) {
-                if (hasPieceAt(i + 1) && board[i].color == Color.BLACK)
-                    assert board[i].isKing;
-            }
+            assert (black & ~kings & BLACK_KING_ROW) == 0;
+
+            // key and values match the position
+            assert key == computeKey();
+            int middlegame = this.middlegame;
+            int endgame = this.endgame;
+            computeValues();
+            assert middlegame == this.middlegame && endgame == this.endgame;
 
             // moves seem correct
             for (Move move : getLegalMoves()) {
-                assert board[move.getStart()] != null;
-                assert board[move.getStart()].color == this.turn;
-                assert board[move.getEnd()] == null;
+                assert hasPieceAt(move.getStart());
+                assert getColor(move.getStart()) == this.turn;
+                assert !hasPieceAt(move.getEnd());
                 assert Math.abs(move.getStart() - move.getEnd()) <= WIDTH + 1;
             }
         }
@@ -145,11 +397,9 @@ public final class Board {
      * @return a set of all current legal moves
      */
     public Set<Move> getLegalMoves() {
-        if (this.jumps.isEmpty()) {
-            return this.steps;
-        } else {
-            return this.jumps;
-        }
+        if (this.legalMoves == null)
+            updateLegalMoves();
+        return this.legalMoves;
     }
 
     /**
@@ -157,160 +407,397 @@ public final class Board {
      * legal moves
      */
     private void updateLegalMoves() {
-        this.jumps = getLegalJumps();
-        if (this.jumps.isEmpty()) {
-            this.steps = getLegalSteps();
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(moves, 0);
+
+        this.legalMoves = new HashSet<>();
+        for (int i = 0; i < count; i++)
+            this.legalMoves.add(toMove(moves[i]));
+    }
+
+    /**
+     * Writes the current legal moves into moves, packed into
+     * ints, starting at offset. Jumps are mandatory, so these
+     * are either all jumps or all steps. Used by the searches
+     * in place of getLegalMoves() so that nothing is allocated
+     * @param moves the buffer to write the moves into, must
+     *              have room for MAX_MOVES moves after offset
+     * @param offset the index of moves to write the first move to
+     * @return the number of moves written
+     */
+    int generateMoves(int[] moves, int offset) {
+        int empty = ~(black | red);
+        int opponent = (this.turn == Color.BLACK) ? red : black;
+        int only = (jumper >= 0) ? 1 << jumper : -1;
+        int count = offset;
+
+        // jumps, pieces with an opponent next to them and an empty place behind
+        for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++) {
+            int back = opposite(dir);
+            int pieces = shift(shift(empty, back) & opponent, back) & movers(dir) & only;
+            for (; pieces != 0; pieces &= pieces - 1) {
+                int i = Integer.numberOfTrailingZeros(pieces);
+                moves[count++] = packMove(i, Integer.numberOfTrailingZeros(LANDING[dir][i]),
+                        Integer.numberOfTrailingZeros(NEIGHBOR[dir][i]));
+            }
         }
-        checkRep();
+
+        if (count > offset)
+            return count - offset;
+
+        // steps, pieces with an empty place next to them
+        for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++) {
+            int pieces = shift(empty, opposite(dir)) & movers(dir);
+            for (; pieces != 0; pieces &= pieces - 1) {
+                int i = Integer.numberOfTrailingZeros(pieces);
+                moves[count++] = packMove(i, Integer.numberOfTrailingZeros(NEIGHBOR[dir][i]), -1);
+            }
+        }
+
+        return count - offset;
     }
 
-    //////////////////////// DISGUSTING ENCODING OF RULES //////////////////////////////
-
-    /**
-     * Helper method that returns the current legal
-     * jumps (moves that kill)
-     * @return a set of all legal jumps
-     */
-    private Set<Move> getLegalJumps() {
-        Set<Move> result = new HashSet<>();
-
-        // loop over all pieces
-        int max = getNumOfPlaces();
-        for (int i = 1; i <= max; i++) {
-            Piece p = getPiece(i);
-
-            // only look at pieces whose turn it is
-            if (p != null && p.color == this.turn) {
-                int type = (i - 1) % WIDTH;
-                // black pieces (or kings) that are not on Red's last two rows
-                if ( (p.color == Color.BLACK || p.isKing) && i <= max - WIDTH) {
-
-                    // no left edge pieces
-                    if (type != 0 && type != H_WIDTH) {
-                        // +7
-                        if (!hasPieceAt(i + WIDTH - 1)) {
-
-                            // check that theres a piece to jump
-                            if (type < H_WIDTH) {   // right shifted row
-                                if (hasPieceAt(i + H_WIDTH) && getColor(i + H_WIDTH) != this.turn)
-                                    result.add(new Move(i, i + WIDTH - 1, i + H_WIDTH));
-                            } else {                // left shifted row
-                                if (hasPieceAt(i + H_WIDTH - 1) && getColor(i + H_WIDTH - 1) != this.turn)
-                                    result.add(new Move(i, i + WIDTH - 1, i + H_WIDTH - 1));
-                            }
-                        }
-                    }
-
-
-                    // no right edge pieces
-                    if (type != H_WIDTH - 1 && type != WIDTH - 1) {
-                        // +9
-                        if (!hasPieceAt(i + WIDTH + 1)) {
-
-                            // check that there's a piece to jump
-                            if (type < H_WIDTH) {
-                                if (hasPieceAt(i + H_WIDTH  + 1) && getColor(i + H_WIDTH + 1) != this.turn)
-                                    result.add(new Move(i, i + WIDTH + 1, i + H_WIDTH + 1));
-                            } else {
-                                if (hasPieceAt(i + H_WIDTH) && getColor(i + H_WIDTH) != this.turn)
-                                    result.add(new Move(i, i + WIDTH + 1, i + H_WIDTH));
-                            }
-                        }
-                    }
-                }
+    /**
+     * Writes the current legal turns into turns, packed into
+     * longs, starting at offset. A turn is every jump of a
+     * multi-jump at once, or a single step, so the turn always
+     * changes after making one with makeTurn()
+     * @param turns the buffer to write the turns into, must
+     *              have room for MAX_TURNS turns after offset
+     * @param offset the index of turns to write the first turn to
+     * @return the number of turns written
+     * @throws IllegalStateException if there are more than
+     *              MAX_TURNS turns
+     */
+    int generateTurns(long[] turns, int offset) {
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        int count = collectTurns(turns, offset);
+        if (event.shouldCommit()) {
+            event.turns = count;
+            event.captures = (count > 0 && isCapture(turns[offset]));
+            event.commit();
+        }
+        return count;
+    }
 
-                // red pieces (or kings) that are not on Black's last two rows
-                if ( (p.color == Color.RED || p.isKing) && i > WIDTH) {
-
-                    // no right edge pieces
-                    if (type != H_WIDTH - 1 && type != WIDTH - 1) {
-                        // -7
-                        if (!hasPieceAt(i - WIDTH + 1)) {
-
-                            if (type < H_WIDTH) {   // right shifted row
-                                if (hasPieceAt(i - H_WIDTH + 1) && getColor(i - H_WIDTH + 1) != this.turn)
-                                    result.add(new Move(i, i - WIDTH + 1, i - H_WIDTH + 1));
-                            } else {                // left shifted row
-                                if (hasPieceAt(i - H_WIDTH) && getColor(i - H_WIDTH) != this.turn)
-                                    result.add(new Move(i, i - WIDTH + 1, i - H_WIDTH));
-                            }
-                        }
-                    }
-
-
-                    // no left edge pieces
-                    if (type != 0 && type != H_WIDTH) {
-                        // -9
-                        if (!hasPieceAt(i - WIDTH - 1)) {
-                            if (type < H_WIDTH) {   // right shifted row
-                                if (hasPieceAt(i - H_WIDTH) && getColor(i - H_WIDTH) != this.turn)
-                                    result.add(new Move(i, i - WIDTH - 1, i -  H_WIDTH));
-                            } else {                // left shifted row
-                                if (hasPieceAt(i - H_WIDTH - 1) && getColor(i - H_WIDTH - 1) != this.turn)
-                                    result.add(new Move(i, i - WIDTH - 1, i - H_WIDTH - 1));
-                            }
-                        }
-                    }
+    /**
+     * Helper method for generateTurns() that writes the turns
+     * @param turns the buffer to write the turns into
+     * @param offset the index of turns to write the first turn to
+     * @return the number of turns written
+     */
+    private int collectTurns(long[] turns, int offset) {
+        if (getJumpers() == 0) {
+            int empty = ~(black | red);
+            int count = offset;
+            for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++) {
+                int pieces = shift(empty, opposite(dir)) & movers(dir);
+                for (; pieces != 0; pieces &= pieces - 1) {
+                    int i = Integer.numberOfTrailingZeros(pieces);
+                    turns[count++] = packTurn(i, Integer.numberOfTrailingZeros(NEIGHBOR[dir][i]), 0);
                 }
             }
+            return count - offset;
         }
 
-        return result;
+        // follow each chain of jumps with makeMove(), so that turns
+        // are exactly the jumps move() would allow one at a time
+        if (hops == null) {
+            hops = new int[MAX_PIECES][MAX_MOVES];
+            foundTurns = new long[1 << TURN_BITS];
+            foundStamps = new int[1 << TURN_BITS];
+        }
+        // a new stamp empties the set
+        if (++stamp == 0) {
+            Arrays.fill(foundStamps, 0);
+            stamp = 1;
+        }
+        return collectJumps(turns, offset, offset, -1, 0, 0);
     }
 
     /**
-     * Helper method that returns the current
-     * legal steps (moves that do not kill)
-     * @return a set of all legal steps
+     * Helper method for generateTurns() that makes every jump
+     * from the current position, adding a turn whenever the
+     * turn changes and following the chain otherwise
+     * @param turns the buffer to write the turns into
+     * @param offset the index of the first turn
+     * @param end the index after the last turn written so far
+     * @param start the index the jumping piece started at,
+     *              -1 before the first jump
+     * @param captured the mask of pieces captured so far
+     * @param hop the number of jumps made so far
+     * @return the number of turns written
+     * @throws IllegalStateException if there are more than
+     *              MAX_TURNS turns
      */
-    private Set<Move> getLegalSteps() {
-        Set<Move> result = new HashSet<>();
-
-        int max = getNumOfPlaces();
+    private int collectJumps(long[] turns, int offset, int end, int start, int captured, int hop) {
+        int count = generateMoves(hops[hop], 0);
+        for (int i = 0; i < count; i++) {
+            int m = hops[hop][i];
+            int from = (start < 0) ? moveStart(m) : start;
+            int taken = captured | (1 << moveJumped(m));
+
+            long undo = makeMove(m);
+            if ((undo & UNDO_SWAPPED) != 0) {
+                // chains that take the same pieces between the same
+                // places are the same turn
+                long turn = packTurn(from, moveEnd(m), taken);
+                if (addFound(turn)) {
+                    if (end - offset == MAX_TURNS)
+                        throw new IllegalStateException("more than " + MAX_TURNS + " turns in " + toFen());
+                    turns[end++] = turn;
+                }
+            } else {
+                end = offset + collectJumps(turns, offset, end, from, taken, hop + 1);
+            }
+            unmakeMove(m, undo);
+        }
+        return end - offset;
+    }
 
-        for (int i = 1; i <= max; i++) {
-            Piece p = getPiece(i);
-            if (p != null && p.color == this.turn) {
-                int type = (i - 1) % WIDTH;
+    /**
+     * Helper method for collectJumps() that adds a turn to the set
+     * of turns found so far
+     * @param turn the packed turn
+     * @return true if the turn was not in the set
+     */
+    private boolean addFound(long turn) {
+        int slot = (int) ((turn * 0x9E3779B97F4A7C15L) >>> (64 - TURN_BITS));
+        while (foundStamps[slot] == stamp) {
+            if (foundTurns[slot] == turn)
+                return false;
+            slot = (slot + 1) & ((1 << TURN_BITS) - 1);
+        }
+        foundTurns[slot] = turn;
+        foundStamps[slot] = stamp;
+        return true;
+    }
 
-                // black pieces (or kings) that are not on Red's last row
-                if ( (p.color == Color.BLACK || p.isKing) && i <= max - H_WIDTH) {
+    //////////////////////// BITBOARD ENCODING OF RULES //////////////////////////////
 
-                    // Always can move +H_WIDTH
-                    if (!hasPieceAt(i + H_WIDTH))
-                        result.add(new Move(i, i + H_WIDTH));
+    /**
+     * Helper method that returns the mask of the place next to
+     * (row, col), or 0 if it is off the board
+     * @param row the row of the place, 0 is the top row
+     * @param col the column of the place, 0 is the left column
+     * @return a mask with only the bit of the place set, 0 if the
+     *              place is off the board
+     */
+    private static int maskAt(int row, int col) {
+        if (row < 0 || row >= WIDTH || col < 0 || col >= WIDTH)
+            return 0;
+        return 1 << (row * H_WIDTH + col / 2);
+    }
 
-                    if (type < H_WIDTH - 1) {       // right shifted rows (excluding edge)
-                        if (!hasPieceAt(i + H_WIDTH + 1))
-                            result.add(new Move(i, i + H_WIDTH + 1));
-                    } else if (type > H_WIDTH) {    // left shifted rows (excluding edge)
-                        if (!hasPieceAt(i + H_WIDTH - 1))
-                            result.add(new Move(i, i + H_WIDTH - 1));
-                    }
-                }
+    /**
+     * Helper method that moves every piece in mask one place
+     * in the given direction, pieces that would leave the board
+     * are dropped
+     * @param mask the pieces to be moved
+     * @param dir the direction to move the pieces in
+     * @return the mask of the places the pieces moved to
+     */
+    private static int shift(int mask, int dir) {
+        if (dir == DOWN_LEFT || dir == DOWN_RIGHT)
+            return ((mask & SHIFT_WIDTH[dir]) << H_WIDTH) | ((mask & SHIFT_OTHER[dir]) << SHIFT[dir]);
+        else
+            return ((mask & SHIFT_WIDTH[dir]) >>> H_WIDTH) | ((mask & SHIFT_OTHER[dir]) >>> SHIFT[dir]);
+    }
 
-                // red pieces (or kings) that are not on Black's last row
-                if ( (p.color == Color.RED || p.isKing) && i > H_WIDTH) {
+    /**
+     * Helper method that returns the direction opposite to dir
+     * @param dir the direction to reverse
+     * @return the opposite of dir
+     */
+    private static int opposite(int dir) {
+        return UP_RIGHT - dir;
+    }
 
-                    // Always can move -H_WIDTH
-                    if (!hasPieceAt(i - H_WIDTH))
-                        result.add(new Move(i, i - H_WIDTH));
+    /**
+     * Helper method that returns the pieces of the player whose
+     * turn it is that are allowed to move in the given direction
+     * @param dir the direction to be moved in
+     * @return the mask of pieces that can move in direction dir
+     */
+    private int movers(int dir) {
+        boolean down = (dir == DOWN_LEFT || dir == DOWN_RIGHT);
+        if (this.turn == Color.BLACK)
+            return down ? black : black & kings;
+        else
+            return down ? red & kings : red;
+    }
 
-                    if (type < H_WIDTH - 1) {       // right shifted rows (excluding edge)
-                        if (!hasPieceAt(i - H_WIDTH + 1))
-                            result.add(new Move(i, i - H_WIDTH + 1));
-                    } else if (type > H_WIDTH) {    // left shifted rows (excluding edge)
-                        if (!hasPieceAt(i - H_WIDTH - 1))
-                            result.add(new Move(i, i - H_WIDTH - 1));
-                    }
-                }
-            }
+    /**
+     * Helper method that returns all pieces that can currently jump,
+     * limited to the jumping piece in the middle of a multi-jump
+     * @return the mask of pieces that can jump
+     */
+    private int getJumpers() {
+        int empty = ~(black | red);
+        int opponent = (this.turn == Color.BLACK) ? red : black;
+
+        int result = 0;
+        for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++) {
+            // pieces with an opponent next to them, with an empty place behind
+            int back = opposite(dir);
+            result |= shift(shift(empty, back) & opponent, back) & movers(dir);
         }
+
+        if (jumper >= 0)
+            result &= 1 << jumper;
+        return result;
+    }
+
+    /**
+     * Helper method that returns all pieces that can currently step
+     * @return the mask of pieces that can step
+     */
+    private int getSteppers() {
+        int empty = ~(black | red);
+
+        int result = 0;
+        for (int dir = DOWN_LEFT; dir <= UP_RIGHT; dir++)
+            result |= shift(empty, opposite(dir)) & movers(dir);
         return result;
     }
 
+    /**
+     * Helper method that converts a mask with a single bit set
+     * to the place of that bit
+     * @param mask the mask to be converted
+     * @return the place of the set bit
+     */
+    private static int toPlace(int mask) {
+        return Integer.numberOfTrailingZeros(mask) + 1;
+    }
+
     ////////////////////////// END OF RULES ////////////////////////////////
 
+    /**
+     * Packs a move into an int, as used by generateMoves()
+     * @param start the index of the starting place
+     * @param end the index of the ending place
+     * @param jumped the index of the jumped piece, less than
+     *              0 if none
+     * @return the packed move
+     */
+    static int packMove(int start, int end, int jumped) {
+        int move = start | (end << END_SHIFT);
+        if (jumped >= 0)
+            move |= (jumped << JUMPED_SHIFT) | JUMP_FLAG;
+        return move;
+    }
+
+    /**
+     * Returns the index (place - 1) of the start of a packed move
+     * @param move the packed move
+     * @return the index of the starting place
+     */
+    static int moveStart(int move) {
+        return move & INDEX_MASK;
+    }
+
+    /**
+     * Returns the index (place - 1) of the end of a packed move
+     * @param move the packed move
+     * @return the index of the ending place
+     */
+    static int moveEnd(int move) {
+        return (move >>> END_SHIFT) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the index (place - 1) of the piece jumped by a
+     * packed move, less than 0 if it is not a jump
+     * @param move the packed move
+     * @return the index of the jumped piece, -1 if none
+     */
+    static int moveJumped(int move) {
+        if (!isJump(move))
+            return -1;
+        return (move >>> JUMPED_SHIFT) & INDEX_MASK;
+    }
+
+    /**
+     * Returns whether or not a packed move is a jump
+     * @param move the packed move
+     * @return true if the move jumps a piece, false otherwise
+     */
+    static boolean isJump(int move) {
+        return (move & JUMP_FLAG) != 0;
+    }
+
+    /**
+     * Packs a turn into a long
+     * @param start the index (place - 1) the piece starts at
+     * @param end the index the piece ends at
+     * @param captured the mask of captured pieces, 0 for a step
+     * @return the packed turn
+     */
+    static long packTurn(int start, int end, int captured) {
+        return (captured & 0xFFFFFFFFL) | ((long) start << TURN_START_SHIFT)
+                | ((long) end << TURN_END_SHIFT);
+    }
+
+    /**
+     * Returns the index (place - 1) a packed turn starts at
+     * @param turn the packed turn
+     * @return the index of the start
+     */
+    static int turnStart(long turn) {
+        return (int) (turn >>> TURN_START_SHIFT) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the index (place - 1) a packed turn ends at
+     * @param turn the packed turn
+     * @return the index of the end
+     */
+    static int turnEnd(long turn) {
+        return (int) (turn >>> TURN_END_SHIFT) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the mask of pieces a packed turn captures
+     * @param turn the packed turn
+     * @return the mask of captured pieces, 0 for a step
+     */
+    static int turnCaptured(long turn) {
+        return (int) turn;
+    }
+
+    /**
+     * Returns whether a packed turn captures
+     * @param turn the packed turn
+     * @return true if the turn is a jump, false if it is a step
+     */
+    static boolean isCapture(long turn) {
+        return (int) turn != 0;
+    }
+
+    /**
+     * Returns a short id of a packed turn, its start, end and
+     * whether it captures, which fits where a packed move does
+     * @param turn the packed turn
+     * @return the id of the turn, never 0
+     */
+    static int turnId(long turn) {
+        return turnStart(turn) | (turnEnd(turn) << END_SHIFT) | (isCapture(turn) ? JUMP_FLAG : 0);
+    }
+
+    /**
+     * Unpacks a packed move into a Move
+     * @param move the packed move
+     * @return the equivalent Move
+     */
+    static Move toMove(int move) {
+        if (isJump(move))
+            return new Move(moveStart(move) + 1, moveEnd(move) + 1, moveJumped(move) + 1);
+        else
+            return new Move(moveStart(move) + 1, moveEnd(move) + 1);
+    }
+
     /**
      * Gets the width of the board, also accessible through
      * Board.WIDTH
@@ -334,22 +821,7 @@ public final class Board {
      * @return the number of legal places on the board
      */
     public int getNumOfPlaces() {
-        return (WIDTH * WIDTH) / 2;
-    }
-
-    /**
-     * Helper method that returns the piece at the given place
-     * which helps when we have the place, rather than index
-     * @param place the place on the board whose Piece will be
-     *              returned
-     * @return Piece at the given place on the board
-     * @throws IllegalArgumentException if the place is not on
-     *              the board (less than 1 or greater than
-     *              getNumOfPlaces())
-     */
-    private Piece getPiece(int place) {
-        checkPlace(place);
-        return board[place - 1];
+        return PLACES;
     }
 
     /**
@@ -377,7 +849,7 @@ public final class Board {
      */
     public boolean hasPieceAt(int place) {
         checkPlace(place);
-        return board[place - 1] != null;
+        return ((black | red) & (1 << (place - 1))) != 0;
     }
 
     /**
@@ -396,7 +868,7 @@ public final class Board {
         checkPlace(place);
         if (!hasPieceAt(place))
             throw new NoSuchElementException("there is no piece at: " + place);
-        return board[place - 1].isKing;
+        return (kings & (1 << (place - 1))) != 0;
     }
 
     /**
@@ -414,7 +886,38 @@ public final class Board {
         checkPlace(place);
         if (!hasPieceAt(place))
             throw new NoSuchElementException("there is no piece at: " + place);
-        return board[place - 1].color;
+        if ((black & (1 << (place - 1))) != 0)
+            return Color.BLACK;
+        else
+            return Color.RED;
+    }
+
+    /**
+     * Returns whether or not the player whose turn it is has a
+     * jump, in which case every legal move is a jump
+     * @return true if there is a legal jump, false otherwise
+     */
+    boolean hasJumps() {
+        return getJumpers() != 0;
+    }
+
+    /**
+     * Returns the material value of the piece at the given index,
+     * for either color, on the scale of getScore(): a man is worth
+     * MAN_VALUE and a king is worth its middlegame and endgame
+     * values blended by the number of pieces on the board, as
+     * getScore() blends them, without the bonuses for its place
+     * @param index the index (place - 1) of the piece
+     * @return the value of the piece, 0 if the place is empty
+     */
+    int valueAt(int index) {
+        int mask = 1 << index;
+        if (((black | red) & mask) == 0)
+            return 0;
+        if ((kings & mask) == 0)
+            return MAN_VALUE;
+        int pieces = Integer.bitCount(black | red);
+        return (KING_MIDDLEGAME_VALUE * pieces + KING_ENDGAME_VALUE * (MAX_PIECES - pieces)) / MAX_PIECES;
     }
 
     /**
@@ -423,7 +926,7 @@ public final class Board {
      * @return true if the game is over, false otherwise
      */
     public boolean gameOver() {
-        return getLegalMoves().isEmpty();
+        return (getJumpers() | getSteppers()) == 0;
     }
 
     /**
@@ -436,60 +939,467 @@ public final class Board {
     public void move(Move m) {
         checkRep();
 
-        if (!getLegalMoves().contains(m))
+        // find the move we generate, instead of the user passed
+        // so that we know if a piece was jumped, without building
+        // the set of legal moves
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(moves, 0);
+        int move = 0;
+        for (int i = 0; i < count; i++) {
+            if (moveStart(moves[i]) == m.getStart() - 1 && moveEnd(moves[i]) == m.getEnd() - 1) {
+                move = moves[i];
+                break;
+            }
+        }
+        if (move == 0)
             throw new IllegalArgumentException(m + " is not a legal move");
 
+        makeMove(move);
+        checkRep();
+    }
+
+    /**
+     * Makes the packed move, as returned by generateMoves(),
+     * and changes the turn unless the move was a jump and the
+     * piece can make another jump. The move is not checked
+     * for legality. Returns an undo record that unmakeMove()
+     * uses to take the move back, the low 32 bits are the mask
+     * of captured kings, bits 32-37 the previous jumper + 1,
+     * bit 38 is set if the piece was made a king and bit 39
+     * if the turn changed
+     * @param move the packed move to be made
+     * @return the undo record of the move
+     */
+    long makeMove(int move) {
+        long undo = (long) (jumper + 1) << UNDO_JUMPER_SHIFT;
+
         // can the piece jump again?
         boolean multijump = false;
 
-        // get the move we created, instead of the user passed
-        // so that we know if a piece was jumped
-        for (Move move : getLegalMoves()) {
-            if (move.equals(m)) {
-                m = move;
-                break;
-            }
+        // take the moving and jumped pieces out of the key and values
+        key ^= pieceKey(moveStart(move)) ^ jumperKey();
+        addValue(moveStart(move), -1);
+        if (isJump(move)) {
+            key ^= pieceKey(moveJumped(move));
+            addValue(moveJumped(move), -1);
         }
 
         // move the piece
-        int start = m.getStart() - 1;
-        int end = m.getEnd() - 1;
-        board[end] = board[start];
-        board[start] = null;
+        int start = 1 << moveStart(move);
+        int end = 1 << moveEnd(move);
+        if (this.turn == Color.BLACK)
+            black ^= start | end;
+        else
+            red ^= start | end;
+        if ((kings & start) != 0)
+            kings ^= start | end;
+        jumper = -1;
 
         // remove jumped piece if its a jump
-        if (m.isJump()) {
-            board[m.getJumped() - 1] = null;
-
-            Set<Move> newJumps = new HashSet<>();
+        if (isJump(move)) {
+            int jumped = 1 << moveJumped(move);
+            undo |= (kings & jumped) & 0xFFFFFFFFL;
+            black &= ~jumped;
+            red &= ~jumped;
+            kings &= ~jumped;
 
             // check if piece can jump again
-            for (Move move : getLegalJumps()) {
-                if (move.getStart() == m.getEnd()) {
-                    multijump = true;
-                    newJumps.add(move);
-                }
-            }
-
-            if (multijump)
-                this.jumps = newJumps;
+            jumper = moveEnd(move);
+            multijump = getJumpers() != 0;
+            if (!multijump)
+                jumper = -1;
         }
 
         // handle making kings
-        if (this.turn == Color.BLACK && end >= getNumOfPlaces() - H_WIDTH) {
-            board[end] = board[end].makeKing();
+        int crowned = end & ~kings & ((this.turn == Color.BLACK) ? BLACK_KING_ROW : RED_KING_ROW);
+        if (crowned != 0) {
+            kings |= crowned;
+            undo |= UNDO_CROWNED;
         }
 
-        if (this.turn == Color.RED && end < H_WIDTH) {
-            board[end] = board[end].makeKing();
-        }
+        this.legalMoves = null;
 
         // handle multiple jumps
         if (!multijump) {
             swapTurn();
-            updateLegalMoves();
+            undo |= UNDO_SWAPPED;
         }
 
+        key ^= pieceKey(moveEnd(move)) ^ jumperKey();
+        addValue(moveEnd(move), 1);
+        return undo;
+    }
+
+    /**
+     * Takes back the packed move, which must be the last move
+     * made by makeMove() that has not been taken back
+     * @param move the packed move to be taken back
+     * @param undo the undo record returned by makeMove(move)
+     */
+    void unmakeMove(int move, long undo) {
+        key ^= pieceKey(moveEnd(move)) ^ jumperKey();
+        addValue(moveEnd(move), -1);
+        if ((undo & UNDO_SWAPPED) != 0)
+            swapTurn();
+
+        // move the piece back
+        int start = 1 << moveStart(move);
+        int end = 1 << moveEnd(move);
+        if ((undo & UNDO_CROWNED) != 0)
+            kings &= ~end;
+        if (this.turn == Color.BLACK)
+            black ^= start | end;
+        else
+            red ^= start | end;
+        if ((kings & end) != 0)
+            kings ^= start | end;
+
+        // put back the jumped piece
+        if (isJump(move)) {
+            int jumped = 1 << moveJumped(move);
+            if (this.turn == Color.BLACK)
+                red |= jumped;
+            else
+                black |= jumped;
+            kings |= (int) undo & jumped;
+        }
+
+        jumper = (int) ((undo >>> UNDO_JUMPER_SHIFT) & 0x3F) - 1;
+        this.legalMoves = null;
+
+        key ^= pieceKey(moveStart(move)) ^ jumperKey();
+        addValue(moveStart(move), 1);
+        if (isJump(move)) {
+            key ^= pieceKey(moveJumped(move));
+            addValue(moveJumped(move), 1);
+        }
+    }
+
+    /**
+     * Makes the packed turn, as returned by generateTurns(), every
+     * jump of it at once, and changes the turn. The turn is not
+     * checked for legality. Returns an undo record that unmakeTurn()
+     * uses to take the turn back, laid out as by makeMove()
+     * @param turn the packed turn to be made
+     * @return the undo record of the turn
+     */
+    long makeTurn(long turn) {
+        int start = 1 << turnStart(turn);
+        int end = 1 << turnEnd(turn);
+        int captured = turnCaptured(turn);
+        long undo = ((long) (jumper + 1) << UNDO_JUMPER_SHIFT) | UNDO_SWAPPED
+                | ((kings & captured) & 0xFFFFFFFFL);
+
+        // take the moving and captured pieces out of the key and values
+        key ^= pieceKey(turnStart(turn)) ^ jumperKey();
+        addValue(turnStart(turn), -1);
+        for (int pieces = captured; pieces != 0; pieces &= pieces - 1) {
+            key ^= pieceKey(Integer.numberOfTrailingZeros(pieces));
+            addValue(Integer.numberOfTrailingZeros(pieces), -1);
+        }
+
+        // a king can end a multi-jump where it started
+        boolean king = (kings & start) != 0;
+        if (this.turn == Color.BLACK) {
+            black = (black & ~start) | end;
+            red &= ~captured;
+        } else {
+            red = (red & ~start) | end;
+            black &= ~captured;
+        }
+        kings &= ~(start | captured);
+        if (king)
+            kings |= end;
+        jumper = -1;
+
+        // a man that reaches the last row is crowned, and can't jump on
+        if (!king && (end & ((this.turn == Color.BLACK) ? BLACK_KING_ROW : RED_KING_ROW)) != 0) {
+            kings |= end;
+            undo |= UNDO_CROWNED;
+        }
+
+        this.legalMoves = null;
+        swapTurn();
+
+        key ^= pieceKey(turnEnd(turn));
+        addValue(turnEnd(turn), 1);
+        return undo;
+    }
+
+    /**
+     * Takes back the packed turn, which must be the last turn
+     * made by makeTurn() that has not been taken back
+     * @param turn the packed turn to be taken back
+     * @param undo the undo record returned by makeTurn(turn)
+     */
+    void unmakeTurn(long turn, long undo) {
+        int start = 1 << turnStart(turn);
+        int end = 1 << turnEnd(turn);
+        int captured = turnCaptured(turn);
+
+        key ^= pieceKey(turnEnd(turn));
+        addValue(turnEnd(turn), -1);
+        swapTurn();
+
+        // move the piece back, and put back the captured pieces
+        boolean king = (kings & end) != 0 && (undo & UNDO_CROWNED) == 0;
+        if (this.turn == Color.BLACK) {
+            black = (black & ~end) | start;
+            red |= captured;
+        } else {
+            red = (red & ~end) | start;
+            black |= captured;
+        }
+        kings &= ~end;
+        if (king)
+            kings |= start;
+        kings |= (int) undo & captured;
+
+        jumper = (int) ((undo >>> UNDO_JUMPER_SHIFT) & 0x3F) - 1;
+        this.legalMoves = null;
+
+        key ^= pieceKey(turnStart(turn)) ^ jumperKey();
+        addValue(turnStart(turn), 1);
+        for (int pieces = captured; pieces != 0; pieces &= pieces - 1) {
+            key ^= pieceKey(Integer.numberOfTrailingZeros(pieces));
+            addValue(Integer.numberOfTrailingZeros(pieces), 1);
+        }
+    }
+
+    /**
+     * Returns the moves, one jump at a time, that make up a
+     * packed turn, to be passed to move() in order
+     * @param turn a packed turn, as returned by generateTurns()
+     * @return the moves of the turn, empty if it is not legal
+     */
+    List<Move> turnPath(long turn) {
+        List<Move> result = new ArrayList<>();
+        if (hops == null)
+            hops = new int[MAX_PIECES][MAX_MOVES];
+        findPath(turn, turnCaptured(turn), 0, result);
+        return result;
+    }
+
+    /**
+     * Helper method for turnPath() that looks for the jumps
+     * from the current position that finish the turn
+     * @param turn the packed turn
+     * @param left the mask of pieces the turn has yet to capture
+     * @param hop the number of moves made so far
+     * @param path the moves made so far, added to as the path
+     *              is found
+     * @return true if the path was found, false otherwise
+     */
+    private boolean findPath(long turn, int left, int hop, List<Move> path) {
+        int count = generateMoves(hops[hop], 0);
+        for (int i = 0; i < count; i++) {
+            int m = hops[hop][i];
+            if (isJump(m) ? (left & (1 << moveJumped(m))) == 0 : isCapture(turn))
+                continue;
+            if (hop == 0 && moveStart(m) != turnStart(turn))
+                continue;
+
+            long undo = makeMove(m);
+            boolean found;
+            if ((undo & UNDO_SWAPPED) != 0)
+                found = (moveEnd(m) == turnEnd(turn) && left == (isJump(m) ? 1 << moveJumped(m) : 0));
+            else
+                found = findPath(turn, left & ~(1 << moveJumped(m)), hop + 1, path);
+            unmakeMove(m, undo);
+
+            if (found) {
+                path.add(0, toMove(m));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the position on this board with the given one,
+     * with no multi-jump in progress. The position is not checked,
+     * this lets tools that walk many positions reuse one board
+     * @param black the mask of black pieces, bit (place - 1)
+     *              is set if there is one at place
+     * @param red the mask of red pieces
+     * @param kings the mask of kings of either color
+     * @param turn which color's turn it is
+     */
+    void setPosition(int black, int red, int kings, Color turn) {
+        this.black = black;
+        this.red = red;
+        this.kings = kings;
+        this.turn = turn;
+        this.jumper = -1;
+        this.legalMoves = null;
+        this.key = computeKey();
+        computeValues();
+    }
+
+    /**
+     * Returns the mask of black pieces, bit (place - 1) is set
+     * if there is one at place
+     * @return the mask of black pieces
+     */
+    int getBlack() {
+        return this.black;
+    }
+
+    /**
+     * Returns the mask of red pieces, bit (place - 1) is set
+     * if there is one at place
+     * @return the mask of red pieces
+     */
+    int getRed() {
+        return this.red;
+    }
+
+    /**
+     * Returns the mask of kings of either color, bit (place - 1)
+     * is set if there is one at place
+     * @return the mask of kings
+     */
+    int getKings() {
+        return this.kings;
+    }
+
+    /**
+     * Returns whether or not a piece is in the middle of a
+     * multi-jump, and so is the only piece that can move
+     * @return true if a multi-jump is in progress, false otherwise
+     */
+    boolean isJumping() {
+        return this.jumper >= 0;
+    }
+
+    /**
+     * Returns the Zobrist key of the position, equal positions
+     * (including whose turn it is and any multi-jump in progress)
+     * have equal keys
+     * @return the key of the position
+     */
+    long getKey() {
+        return this.key;
+    }
+
+    /**
+     * Helper method that computes the Zobrist key of the
+     * position from scratch
+     * @return the key of the position
+     */
+    private long computeKey() {
+        long result = 0;
+        for (int pieces = black | red; pieces != 0; pieces &= pieces - 1)
+            result ^= pieceKey(Integer.numberOfTrailingZeros(pieces));
+        if (this.turn == Color.RED)
+            result ^= RED_TURN_KEY;
+        return result ^ jumperKey();
+    }
+
+    /**
+     * Helper method that returns the key of the piece at the
+     * given index
+     * @param index the index (place - 1) of the piece
+     * @return the key of the piece, 0 if there is none
+     */
+    private long pieceKey(int index) {
+        int mask = 1 << index;
+        if ((black & mask) != 0)
+            return PIECE_KEYS[(kings & mask) != 0 ? 1 : 0][index];
+        if ((red & mask) != 0)
+            return PIECE_KEYS[(kings & mask) != 0 ? 3 : 2][index];
+        return 0;
+    }
+
+    /**
+     * Helper method that computes the middlegame and endgame
+     * values of the position from scratch
+     */
+    private void computeValues() {
+        this.middlegame = 0;
+        this.endgame = 0;
+        for (int pieces = black | red; pieces != 0; pieces &= pieces - 1)
+            addValue(Integer.numberOfTrailingZeros(pieces), 1);
+    }
+
+    /**
+     * Helper method that adds the values of the piece at the
+     * given index to the values of the position
+     * @param index the index (place - 1) of the piece
+     * @param sign 1 to add the piece, -1 to take it away
+     */
+    private void addValue(int index, int sign) {
+        int mask = 1 << index;
+        int kind;
+        if ((black & mask) != 0)
+            kind = (kings & mask) != 0 ? 1 : 0;
+        else if ((red & mask) != 0)
+            kind = (kings & mask) != 0 ? 3 : 2;
+        else
+            return;
+        middlegame += sign * MIDDLEGAME_VALUES[kind][index];
+        endgame += sign * ENDGAME_VALUES[kind][index];
+    }
+
+    /**
+     * Helper method that returns the key of the piece in the
+     * middle of a multi-jump
+     * @return the key of the jumping piece, 0 if there is none
+     */
+    private long jumperKey() {
+        if (jumper < 0)
+            return 0;
+        return JUMPER_KEYS[jumper];
+    }
+
+    /**
+     * Returns the position in PDN FEN notation, as read by
+     * fromFen(), red pieces are listed as white (W)
+     * @return the position in FEN notation
+     */
+    public String toFen() {
+        StringBuilder result = new StringBuilder((turn == Color.BLACK) ? "B" : "W");
+        result.append(":W").append(fenPieces(red)).append(":B").append(fenPieces(black));
+        return result.toString();
+    }
+
+    /**
+     * Helper method that lists the places of pieces for toFen()
+     * @param pieces the mask of pieces
+     * @return the places of the pieces, separated by commas, kings
+     *              marked with a K
+     */
+    private String fenPieces(int pieces) {
+        StringJoiner result = new StringJoiner(",");
+        for (; pieces != 0; pieces &= pieces - 1) {
+            int i = Integer.numberOfTrailingZeros(pieces);
+            result.add((((kings >>> i) & 1) != 0 ? "K" : "") + (i + 1));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns whether or not this board holds the same position
+     * as the given object, including whose turn it is
+     * @param o the object to be compared for equality
+     * @return true if the object is an equal board, false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Board))
+            return false;
+        Board b = (Board) o;
+        return this.black == b.black && this.red == b.red && this.kings == b.kings
+                && this.jumper == b.jumper && this.turn == b.turn;
+    }
+
+    /**
+     * Returns a hashCode for this board
+     * @return a hashCode for this board
+     */
+    @Override
+    public int hashCode() {
+        return (int) (key ^ (key >>> 32));
     }
 
     // change whose turn it is
@@ -498,6 +1408,7 @@ public final class Board {
             this.turn = Color.BLACK;
         else
             this.turn = Color.RED;
+        this.key ^= RED_TURN_KEY;
     }
 
     /**
@@ -516,53 +1427,9 @@ public final class Board {
                 return 999999;
         }
 
-        int score = 0;
-        for (int i = 0; i < getNumOfPlaces(); i++) {
-            if (board[i] != null) {
-                if (board[i].color == Color.BLACK) {
-                    if (board[i].isKing)
-                        score += 4;
-                    else
-                        score += 1;
-                } else {
-                    if (board[i].isKing)
-                        score -= 4;
-                    else
-                        score -= 1;
-                }
-            }
-        }
-        return score;
-    }
-
-    /**
-     * Private immutable Piece class used in Board to
-     * store information about color and king
-     * status
-     */
-    private static class Piece {
-        // Color of the piece
-        Color color;
-        // Is the piece a king
-        boolean isKing;
-
-        /**
-         * Creates a new piece of the given color
-         * @param color the color of the new Piece
-         */
-        public Piece(Color color) {
-            this.color = color;
-            this.isKing = false;
-        }
-
-        /**
-         * Creates a new Piece of the same color
-         * as this, but is a king
-         */
-        public Piece makeKing() {
-            Piece p = new Piece(this.color);
-            p.isKing = true;
-            return p;
-        }
+        // blend from the middlegame values with a full board
+        // to the endgame values with an empty one
+        int pieces = Integer.bitCount(black | red);
+        return (middlegame * pieces + endgame * (MAX_PIECES - pieces)) / MAX_PIECES;
     }
 }
@@ -0,0 +1,205 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds the opening book read by OpeningBook, by searching every
+ * position of the opening tree deeply, so that the book has a move
+ * whatever the opponent plays. Each position is searched at the last
+ * few depths, each move picked gets a weight for every depth it was
+ * picked at, so moves that stay best as the search deepens are
+ * played most. The tree is expanded a whole turn at a time, so only
+ * positions at the start of a turn, where the bots look moves up, are
+ * in the book. The positions at each ply are searched on all cores,
+ * each thread with its own bot whose transposition table stays warm
+ * from one position to the next.
+ */
+public class BookBuilder {
+    // default number of plies from the start the book covers
+    private static final int PLIES = 6;
+    // default depth positions are searched to
+    private static final int DEPTH = 12;
+    // default file to write the book to
+    private static final String PATH = "checkers.book";
+    // number of depths, ending at the full depth, positions are searched at
+    private static final int WEIGHT_DEPTHS = 3;
+    // memory budget of each thread's transposition table
+    private static final int TABLE_MEGABYTES = 8;
+
+    /**
+     * Builds the opening book and writes it to a file
+     * @param args optional, args[0] is the number of plies the
+     *              book covers (default 6), args[1] the depth to
+     *              search to (default 12), args[2] the file to
+     *              write to (default checkers.book) and args[3]
+     *              the number of threads (default the number of
+     *              processors)
+     * @throws IOException if the file can't be written
+     * @throws InterruptedException if interrupted while searching
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int plies = (args.length > 0) ? Integer.parseInt(args[0]) : PLIES;
+        int depth = (args.length > 1) ? Integer.parseInt(args[1]) : DEPTH;
+        String path = (args.length > 2) ? args[2] : PATH;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        List<long[]> moves = build(plies, depth, threads);
+        write(path, moves);
+        System.out.printf("Wrote %,d moves to %s in %.1f s%n", moves.size(), path,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Searches the opening tree, one ply at a time
+     * @param plies the number of plies from the start to cover
+     * @param depth the depth to search each position to
+     * @param threads the number of positions searched at once
+     * @return the book moves, as {key, packed move, weight, score}
+     * @throws InterruptedException if interrupted while searching
+     */
+    static List<long[]> build(int plies, int depth, int threads) throws InterruptedException {
+        if (depth - WEIGHT_DEPTHS + 1 < 2)
+            throw new IllegalArgumentException("depth must be at least " + (WEIGHT_DEPTHS + 1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+        List<long[]> result = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        List<Board> frontier = new ArrayList<>();
+        frontier.add(new Board());
+        seen.add(frontier.get(0).getKey());
+
+        try {
+            for (int ply = 0; ply < plies && !frontier.isEmpty(); ply++) {
+                List<Callable<List<long[]>>> tasks = new ArrayList<>();
+                for (Board position : frontier)
+                    tasks.add(() -> searchers.get().search(position, depth));
+
+                List<Future<List<long[]>>> done = pool.invokeAll(tasks);
+                List<Board> next = new ArrayList<>();
+                long[] turns = new long[Board.MAX_TURNS];
+                for (int i = 0; i < done.size(); i++) {
+                    Board position = frontier.get(i);
+                    result.addAll(get(done.get(i)));
+
+                    int count = position.generateTurns(turns, 0);
+                    for (int j = 0; j < count; j++) {
+                        Board child = new Board(position);
+                        child.makeTurn(turns[j]);
+                        if (!child.gameOver() && seen.add(child.getKey()))
+                            next.add(child);
+                    }
+                }
+                System.out.printf("ply %d: %,d positions, %,d moves%n", ply, frontier.size(), result.size());
+                frontier = next;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * Helper method that waits for the result of a search
+     * @param f the search
+     * @return the result of the search
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static List<long[]> get(Future<List<long[]>> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes book moves to a file, in the layout read by
+     * OpeningBook
+     * @param path the path of the file
+     * @param moves the book moves, as {key, packed move, weight, score}
+     * @throws IOException if the file can't be written
+     */
+    static void write(String path, List<long[]> moves) throws IOException {
+        // keep the table at most half full so that probes stay short
+        int count = Integer.highestOneBit(Math.max(moves.size(), 8) * 2 - 1) * 2;
+        int mask = count - 1;
+        ByteBuffer file = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + count * OpeningBook.SLOT_SIZE);
+        file.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(count).putInt(moves.size());
+
+        for (long[] move : moves) {
+            int i = OpeningBook.slot(move[0], mask);
+            while (file.getLong(OpeningBook.HEADER_SIZE + i * OpeningBook.SLOT_SIZE) != 0)
+                i = (i + 1) & mask;
+
+            int at = OpeningBook.HEADER_SIZE + i * OpeningBook.SLOT_SIZE;
+            file.putLong(at, move[0]);
+            file.putInt(at + 8, (int) move[3]);
+            file.putShort(at + 12, (short) move[1]);
+            file.putShort(at + 14, (short) move[2]);
+        }
+        file.position(0);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (file.hasRemaining())
+                channel.write(file);
+        }
+    }
+
+    /**
+     * One thread's bot, and the board it holds a reference to,
+     * which positions are copied onto to be searched
+     */
+    private static final class Searcher {
+        // the position being searched
+        private final Board board;
+        // the bot searching it
+        private final PruningBot bot;
+
+        /**
+         * Creates a searcher
+         */
+        Searcher() {
+            this.board = new Board();
+            this.bot = new PruningBot(board, TABLE_MEGABYTES);
+        }
+
+        /**
+         * Searches a position at each of the last WEIGHT_DEPTHS
+         * depths, shallowest first so that each search is sped up
+         * by the table of the last
+         * @param position the position to search
+         * @param depth the deepest depth to search to
+         * @return the moves picked, as {key, packed move, weight, score},
+         *              empty if there is only one legal move
+         */
+        List<long[]> search(Board position, int depth) {
+            List<long[]> result = new ArrayList<>();
+            if (position.getLegalMoves().size() == 1)
+                return result;
+
+            board.setPosition(position.getBlack(), position.getRed(), position.getKings(), position.getTurn());
+            Map<Move, long[]> picked = new LinkedHashMap<>();
+            for (int d = depth - WEIGHT_DEPTHS + 1; d <= depth; d++) {
+                bot.setLimits(d, 0, 0);
+                Move m = bot.getMove();
+                int packed = m.isJump() ? Board.packMove(m.getStart() - 1, m.getEnd() - 1, m.getJumped() - 1)
+                        : Board.packMove(m.getStart() - 1, m.getEnd() - 1, -1);
+
+                long[] move = picked.computeIfAbsent(m, k -> new long[] {board.getKey(), packed, 0, 0});
+                move[2]++;
+                move[3] = bot.getValue();
+            }
+            result.addAll(picked.values());
+            return result;
+        }
+    }
+}
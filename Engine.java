@@ -0,0 +1,67 @@
+/**
+ * A Player that searches for its moves within limits, and can be
+ * told to stop from another thread, as driven by EngineServer
+ */
+interface Engine extends Player {
+    /**
+     * Told about each iteration of a search as it finishes, on the
+     * thread that searches
+     */
+    interface Listener {
+        /**
+         * Called when an iteration of iterative deepening finishes
+         * @param depth the depth of the iteration
+         * @param nodes the nodes it searched
+         * @param nanos the time it took, in nanoseconds
+         */
+        void iteration(int depth, long nodes, long nanos);
+    }
+
+    /**
+     * Sets the limits on each search, the search stops at whichever
+     * limit is hit first, engines without a limit ignore it
+     * @param depth the maximum depth of the tree
+     * @param millis the maximum time per move in milliseconds,
+     *              0 for no limit
+     * @param nodes the maximum number of nodes searched per move,
+     *              0 for no limit
+     * @throws IllegalArgumentException if depth is less than 2,
+     *              or millis or nodes is negative
+     */
+    public void setLimits(int depth, long millis, long nodes);
+
+    /**
+     * Sets who is told about each iteration of later searches, an
+     * engine whose search has no iterations tells no one
+     * @param listener the listener, null for none
+     */
+    public void setListener(Listener listener);
+
+    /**
+     * Asks the current or next call to getMove(), running on another
+     * thread, to stop searching and return the best move found so
+     * far. The stop holds until clearStop() is called
+     */
+    public void stop();
+
+    /**
+     * Forgets any earlier call to stop(), to be called before asking
+     * for a move that may be stopped
+     */
+    public void clearStop();
+
+    /**
+     * Returns the value of the move returned by the last call to
+     * getMove() that searched, positive is good for black
+     * @return the value of the last move searched for
+     */
+    public int getValue();
+
+    /**
+     * Returns the statistics of the last call to getMove() that
+     * searched, a new instance for every search
+     * @return the statistics of the last search, null if there
+     *              has been none
+     */
+    public SearchStats getStats();
+}
@@ -0,0 +1,462 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long-lived engine process that drives the bots for other programs
+ * over a line-based text protocol, on standard input and output or
+ * on a loopback socket. Each line names a session, and every session
+ * has its own board and bot, so many games can be played at once in
+ * one JVM, and a bot's transposition table stays warm between the
+ * moves of its game. Searches run on a shared pool of threads, so a
+ * session can be told to stop while it searches. Bots are created as
+ * in App, so the checkers.table property sets the size of each
+ * session's table.
+ */
+public class EngineServer {
+    /*
+     * Each command is one line, the name of a session then the
+     * command and its arguments, separated by spaces:
+     *   <session> engine <player type>   new bot, as in App (default pruning)
+     *   <session> position start|<FEN> [moves <move> ...]
+     *   <session> limits [depth <n>] [time <ms>] [nodes <n>]
+     *   <session> go                     search, answered with info lines
+     *                                    and then bestmove
+     *   <session> stop                   end the search early
+     *   <session> close                  stop the search, wait for its
+     *                                    bestmove and forget the session
+     *   isready                          answered with readyok
+     *   quit                             close the connection
+     * A session is created the first time engine, position, limits
+     * or go names it, and gets a PruningBot on its first go if no
+     * engine was set. Moves are in PDN notation, 9-14 for a step and
+     * 9x18x27 for a multi-jump.
+     * Answers start with the session they are for. An info depth line
+     * is sent as each iteration of the search finishes, and the info
+     * value line when the whole search is done, bots that don't
+     * search in iterations, such as mcts, only send the last:
+     *   <session> info depth <n> nodes <n> time <ms>
+     *   <session> info value <n> nodes <n> time <ms>
+     *   <session> bestmove <move>|none
+     *   <session> error <message>
+     */
+
+    /**
+     * Runs the server on standard input and output, or on a port
+     * @param args optional, args[0] is the loopback port to listen
+     *              on, and args[1] the number of searches run at once
+     *              (default the number of processors)
+     * @throws IOException if the port can't be listened on
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = (args.length > 1) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread t = new Thread(task, "EngineServer search");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (args.length == 0) {
+            new Connection(System.in, System.out, pool).run();
+            return;
+        }
+
+        try (ServerSocket server = new ServerSocket(Integer.parseInt(args[0]), 50,
+                InetAddress.getLoopbackAddress())) {
+            System.out.println("listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> {
+                    try (Socket s = socket) {
+                        new Connection(s.getInputStream(), s.getOutputStream(), pool).run();
+                    } catch (IOException e) {
+                        System.out.println("connection failed: " + e.getMessage());
+                    }
+                }, "EngineServer connection");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /**
+     * One client, reading commands from its input and writing
+     * answers to its output, with the sessions it has named
+     */
+    private static final class Connection {
+        // where commands come from and answers go
+        private final BufferedReader in;
+        private final PrintWriter out;
+        // the pool searches run on
+        private final ExecutorService pool;
+        // sessions by name
+        private final Map<String, Session> sessions;
+
+        /**
+         * Creates a connection
+         * @param in the stream commands are read from
+         * @param out the stream answers are written to
+         * @param pool the pool searches run on
+         */
+        Connection(InputStream in, OutputStream out, ExecutorService pool) {
+            this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            this.out = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.pool = pool;
+            this.sessions = new HashMap<>();
+        }
+
+        /**
+         * Reads and runs commands until quit or the end of the input,
+         * then closes every session
+         * @throws IOException if the input can't be read
+         */
+        void run() throws IOException {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].isEmpty())
+                        continue;
+                    if (words[0].equals("quit"))
+                        break;
+                    if (words[0].equals("isready")) {
+                        send("readyok");
+                        continue;
+                    }
+
+                    String name = words[0];
+                    try {
+                        if (words.length < 2)
+                            throw new IllegalArgumentException("missing command");
+                        command(name, words);
+                    } catch (RuntimeException e) {
+                        send(name + " error " + e.getMessage());
+                    }
+                }
+            } finally {
+                for (Session session : sessions.values())
+                    session.close();
+            }
+        }
+
+        /**
+         * Helper method that runs one command for a session
+         * @param name the name of the session
+         * @param words the words of the command line, the session
+         *              name first
+         * @throws IllegalArgumentException if the command is not
+         *              understood or not allowed now
+         */
+        private void command(String name, String[] words) {
+            // only commands that set a session up create it, so stray
+            // lines don't each cost a bot
+            switch (words[1]) {
+                case "engine":
+                    if (words.length != 3)
+                        throw new IllegalArgumentException("usage: engine <player type>");
+                    session(name).setEngine(words[2]);
+                    break;
+                case "position":
+                    session(name).setPosition(Arrays.copyOfRange(words, 2, words.length));
+                    break;
+                case "limits":
+                    session(name).setLimits(Arrays.copyOfRange(words, 2, words.length));
+                    break;
+                case "go":
+                    session(name).go(pool);
+                    break;
+                case "stop":
+                    existing(name).stop();
+                    break;
+                case "close":
+                    existing(name).close();
+                    sessions.remove(name);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown command " + words[1]);
+            }
+        }
+
+        /**
+         * Helper method that finds a session, creating it the first
+         * time it is named
+         * @param name the name of the session
+         * @return the session
+         */
+        private Session session(String name) {
+            return sessions.computeIfAbsent(name, n -> new Session(n, this));
+        }
+
+        /**
+         * Helper method that finds a session that has been created
+         * @param name the name of the session
+         * @return the session
+         * @throws IllegalArgumentException if there is no such session
+         */
+        private Session existing(String name) {
+            Session session = sessions.get(name);
+            if (session == null)
+                throw new IllegalArgumentException("no session " + name);
+            return session;
+        }
+
+        /**
+         * Writes an answer, answers from searches on other threads
+         * are written whole
+         * @param line the answer
+         */
+        void send(String line) {
+            synchronized (out) {
+                out.println(line);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * One game, with its own board and bot. Commands that change the
+     * session are refused while it searches
+     */
+    private static final class Session {
+        // default limits of a search
+        private static final int DEPTH = 12;
+        private static final long MILLIS = 0;
+        private static final long NODES = 0;
+
+        // the name answers start with
+        private final String name;
+        // where answers go
+        private final Connection connection;
+        // the position, which the bot holds a reference to
+        private final Board board;
+        // the bot, null until the engine is set or the first search
+        private Player bot;
+        // limits of a search
+        private int depth;
+        private long millis;
+        private long nodes;
+        // the running search, null if none
+        private Future<?> search;
+
+        /**
+         * Creates a session at the start of a game, with no bot yet
+         * @param name the name of the session
+         * @param connection the connection answers are sent on
+         */
+        Session(String name, Connection connection) {
+            this.name = name;
+            this.connection = connection;
+            this.board = new Board();
+            this.depth = DEPTH;
+            this.millis = MILLIS;
+            this.nodes = NODES;
+        }
+
+        /**
+         * Replaces the bot
+         * @param type the player type of the new bot, as in App
+         * @throws IllegalArgumentException if the type is unknown or
+         *              interactive, or the session is searching
+         */
+        void setEngine(String type) {
+            checkIdle();
+            Player player = type.equals("human") ? null : App.createPlayer(type, board, new Random());
+            if (player == null)
+                throw new IllegalArgumentException("unknown player type " + type);
+            if (bot != null)
+                bot.close();
+            this.bot = player;
+            if (engine() != null) {
+                engine().setListener((depth, nodes, nanos) -> connection.send(name + " info depth " + depth
+                        + " nodes " + nodes + " time " + nanos / 1000000));
+            }
+            applyLimits();
+        }
+
+        /**
+         * Sets the position, optionally followed by moves played
+         * from it
+         * @param args start or a FEN position, then optionally moves
+         *              and the moves in PDN notation
+         * @throws IllegalArgumentException if the position or a move
+         *              is not legal, or the session is searching
+         */
+        void setPosition(String[] args) {
+            checkIdle();
+            if (args.length == 0)
+                throw new IllegalArgumentException("usage: position start|<FEN> [moves <move> ...]");
+
+            Board position = args[0].equals("start") ? new Board() : Board.fromFen(args[0]);
+            int i = 1;
+            if (i < args.length) {
+                if (!args[i].equals("moves"))
+                    throw new IllegalArgumentException("expected moves, found " + args[i]);
+                for (i++; i < args.length; i++)
+                    PdnReader.parseTurn(position, args[i]);
+            }
+            board.setPosition(position.getBlack(), position.getRed(), position.getKings(), position.getTurn());
+        }
+
+        /**
+         * Sets the limits of later searches, limits not given keep
+         * their value
+         * @param args pairs of depth, time or nodes and its value
+         * @throws IllegalArgumentException if a limit is not
+         *              understood, or the session is searching
+         */
+        void setLimits(String[] args) {
+            checkIdle();
+            if (args.length % 2 != 0)
+                throw new IllegalArgumentException("usage: limits [depth <n>] [time <ms>] [nodes <n>]");
+
+            int depth = this.depth;
+            long millis = this.millis;
+            long nodes = this.nodes;
+            for (int i = 0; i < args.length; i += 2) {
+                if (args[i].equals("depth"))
+                    depth = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("time"))
+                    millis = Long.parseLong(args[i + 1]);
+                else if (args[i].equals("nodes"))
+                    nodes = Long.parseLong(args[i + 1]);
+                else
+                    throw new IllegalArgumentException("unknown limit " + args[i]);
+            }
+            if (depth < 2 || millis < 0 || nodes < 0)
+                throw new IllegalArgumentException("illegal limits");
+
+            this.depth = depth;
+            this.millis = millis;
+            this.nodes = nodes;
+            applyLimits();
+        }
+
+        /**
+         * Helper method that returns the bot as an Engine
+         * @return the bot, null if it is not an Engine
+         */
+        private Engine engine() {
+            return (bot instanceof Engine) ? (Engine) bot : null;
+        }
+
+        /**
+         * Helper method that passes the limits to the bot, bots
+         * that are not engines have no limits
+         */
+        private void applyLimits() {
+            if (engine() != null)
+                engine().setLimits(depth, millis, nodes);
+        }
+
+        /**
+         * Starts searching the position on the pool, the answer is
+         * sent when the search is done. The board is played along
+         * the whole turn and then put back. A session with no engine
+         * set gets a PruningBot
+         * @param pool the pool to search on
+         * @throws IllegalArgumentException if the session is
+         *              already searching
+         */
+        void go(ExecutorService pool) {
+            checkIdle();
+            if (board.isJumping())
+                throw new IllegalArgumentException("position is in the middle of a jump");
+            if (bot == null)
+                setEngine("pruning");
+
+            int black = board.getBlack();
+            int red = board.getRed();
+            int kings = board.getKings();
+            Color turn = board.getTurn();
+            // a stop sent before the search starts must not be lost,
+            // so the last one is forgotten here and not when it starts
+            if (engine() != null)
+                engine().clearStop();
+            search = pool.submit(() -> {
+                try {
+                    if (board.gameOver()) {
+                        connection.send(name + " bestmove none");
+                        return;
+                    }
+
+                    // the bot plays the rest of a multi-jump without searching
+                    SearchStats last = stats();
+                    long start = System.nanoTime();
+                    List<Move> moves = new ArrayList<>();
+                    do {
+                        Move m = bot.getMove();
+                        moves.add(m);
+                        board.move(m);
+                    } while (board.getTurn() == turn && !board.gameOver());
+                    long millis = (System.nanoTime() - start) / 1000000;
+
+                    if (stats() != last)
+                        sendInfo(millis);
+                    connection.send(name + " bestmove " + PdnWriter.format(moves));
+                } catch (RuntimeException e) {
+                    connection.send(name + " error " + e);
+                } finally {
+                    board.setPosition(black, red, kings, turn);
+                }
+            });
+        }
+
+        /**
+         * Helper method that returns the statistics of the bot's
+         * last search, for bots that are engines
+         * @return the statistics, null if the bot is not an engine
+         *              or has not searched
+         */
+        private SearchStats stats() {
+            return (engine() != null) ? engine().getStats() : null;
+        }
+
+        /**
+         * Helper method that sends the value the bot found in the
+         * search that just finished, its iterations were sent as
+         * they finished
+         * @param millis the time the search took, in milliseconds
+         */
+        private void sendInfo(long millis) {
+            connection.send(name + " info value " + engine().getValue()
+                    + " nodes " + stats().getNodes() + " time " + millis);
+        }
+
+        /**
+         * Asks the running search to finish early, only engines can
+         * be stopped, other bots finish their search
+         */
+        void stop() {
+            if (search == null || search.isDone())
+                return;
+            if (engine() != null)
+                engine().stop();
+        }
+
+        /**
+         * Stops the running search and waits for it to send its
+         * answer, then stops anything the bot still runs, so nothing
+         * is sent for the session once it is closed
+         */
+        void close() {
+            stop();
+            if (search != null)
+                Futures.await(search);
+            if (bot != null)
+                bot.close();
+        }
+
+        /**
+         * Helper method that refuses to change the session while it
+         * searches
+         * @throws IllegalArgumentException if the session is searching
+         */
+        private void checkIdle() {
+            if (search != null && !search.isDone())
+                throw new IllegalArgumentException("searching, stop first");
+        }
+    }
+}
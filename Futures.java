@@ -0,0 +1,34 @@
+import java.util.concurrent.*;
+
+/**
+ * Helpers for waiting on tasks run on a pool of threads
+ */
+final class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Waits for a task to finish, passing on anything it threw. The
+     * wait goes on if the calling thread is interrupted, so the task
+     * has always let go of what it shares once this returns, and the
+     * interrupt is then kept for the caller to see
+     * @param f the task
+     */
+    static void await(Future<?> f) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                f.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,563 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Implementation of Player that chooses moves with Monte Carlo tree
+ * search, using UCT to balance trying the turns that have done best
+ * so far against trying the ones that have been tried least. Each
+ * playout walks down the tree, adds the position it reaches, and
+ * plays random turns from there for a while, until the game ends or
+ * the position is valued by Board.getScore(). Playouts run on several
+ * threads at once, sharing the tree; a thread counts a visit to each
+ * node as it walks down, before its playout has a result, so that it
+ * looks like a loss to the other threads until then and they spread
+ * out over the tree instead of following it. The part of the tree
+ * under the turn played and the opponent's reply is kept for the next
+ * move. A whole multi-jump is a single turn of the tree, and once one
+ * is chosen its remaining jumps are played without searching again.
+ */
+public class MctsBot implements Engine {
+    /**
+     * Default exploration constant of UCT, larger values try
+     * turns that have done badly more often
+     */
+    static final double EXPLORATION = 1.0;
+    /**
+     * Default number of playouts per move
+     */
+    static final long PLAYOUTS = 20000;
+    // random turns played in a playout before the position is valued
+    private static final int PLAYOUT_TURNS = 20;
+    // difference in score that makes black's chances of winning
+    // e / (1 + e), about 73%
+    private static final double SCORE_SCALE = 200;
+    // least and most chance of winning a value is worked out from
+    private static final double MIN_CHANCE = 0.001;
+
+    // reference to the current board
+    private Board board;
+    // exploration constant of UCT
+    private double exploration;
+    // limits on each search, 0 if there is no time or playout limit
+    private long timeLimit;
+    private long playoutLimit;
+    // the position at the root of the tree, and the root, null
+    // before the first search
+    private Board rootPosition;
+    private Node root;
+    // start time (in nanoseconds) of the current search
+    private long startTime;
+    // playouts started during the current search, and finished
+    private AtomicLong started;
+    private AtomicLong playouts;
+    // set by stop() from another thread to end the search early,
+    // until cleared by clearStop()
+    private volatile boolean stopRequested;
+    // set when the main thread is done, to stop the helpers
+    private volatile boolean finished;
+    // playouts run on the calling thread, and alongside it
+    private Worker main;
+    private Worker[] helpers;
+    private ExecutorService pool;
+    // value of the move returned by the last search
+    private int value;
+    // statistics of the last search, which only counts playouts as
+    // nodes, null before the first
+    private SearchStats stats;
+    // the remaining jumps of the last turn chosen, and the key of
+    // the board the first of them is to be played on
+    private List<Move> plan;
+    private long planKey;
+
+    /**
+     * Creates a new instance of MctsBot with a reference
+     * to the current state of the board
+     * @param board the current state of the board
+     */
+    public MctsBot(Board board) {
+        this(board, 1, new Random());
+    }
+
+    /**
+     * Creates a new instance of MctsBot with a reference
+     * to the current state of the board, that runs playouts
+     * on the given number of threads and makes its random
+     * decisions with the given random number generator
+     * @param board the current state of the board
+     * @param threads the number of threads to run playouts on
+     * @param r the random number generator to use
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public MctsBot(Board board, int threads, Random r) {
+        if (threads < 1)
+            throw new IllegalArgumentException("need at least one thread, was " + threads);
+
+        this.board = board;
+        this.exploration = EXPLORATION;
+        this.started = new AtomicLong();
+        this.playouts = new AtomicLong();
+        this.plan = new ArrayList<>();
+        setLimits(0, PLAYOUTS);
+
+        this.main = new Worker(r);
+        this.helpers = new Worker[threads - 1];
+        for (int i = 0; i < helpers.length; i++)
+            helpers[i] = new Worker(new Random(r.nextLong()));
+
+        // idle helper threads time out, so a bot that is thrown
+        // away doesn't keep its threads
+        if (threads > 1) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads - 1, threads - 1,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread t = new Thread(task, "MctsBot helper");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            this.pool = executor;
+        }
+    }
+
+    /**
+     * Sets the exploration constant of UCT
+     * @param exploration the constant, 0 never tries a turn
+     *              that has done worse than another again
+     * @throws IllegalArgumentException if exploration is negative
+     */
+    void setExploration(double exploration) {
+        if (!(exploration >= 0))
+            throw new IllegalArgumentException("illegal exploration: " + exploration);
+        this.exploration = exploration;
+    }
+
+    /**
+     * Sets the limits on each search, the search stops at
+     * whichever limit is hit first. Playouts kept from earlier
+     * searches don't count towards the limit
+     * @param millis the maximum time per move in milliseconds,
+     *              0 for no limit
+     * @param playouts the maximum number of playouts per move
+     *              by all threads together, 0 for no limit
+     * @throws IllegalArgumentException if millis or playouts is
+     *              negative, or both are 0
+     */
+    public void setLimits(long millis, long playouts) {
+        if (millis < 0 || playouts < 0 || (millis == 0 && playouts == 0))
+            throw new IllegalArgumentException("illegal limits: millis = " + millis +
+                    ", playouts = " + playouts);
+        this.timeLimit = millis;
+        this.playoutLimit = playouts;
+    }
+
+    /**
+     * Sets the limits on each search as an Engine, the depth is
+     * ignored and nodes are playouts. The bot keeps the limits it
+     * has if neither a time nor a playout limit is given, since a
+     * search without either would never end
+     * @param depth ignored, the tree has no fixed depth
+     * @param millis the maximum time per move in milliseconds,
+     *              0 for no limit
+     * @param nodes the maximum number of playouts per move,
+     *              0 for no limit
+     * @throws IllegalArgumentException if millis or nodes is negative
+     */
+    public void setLimits(int depth, long millis, long nodes) {
+        if (millis > 0 || nodes > 0)
+            setLimits(millis, nodes);
+        else if (millis < 0 || nodes < 0)
+            throw new IllegalArgumentException("illegal limits: millis = " + millis +
+                    ", playouts = " + nodes);
+    }
+
+    /**
+     * Returns a legal move on the current board, the first move
+     * of the turn played most often by the playouts, unless the
+     * move is the next jump of a multi-jump already chosen
+     * @return a legal move on the current board
+     */
+    public Move getMove() {
+        if (!plan.isEmpty() && board.getKey() == planKey && board.getLegalMoves().contains(plan.get(0)))
+            return nextJump();
+        plan.clear();
+
+        if (board.getLegalMoves().size() == 1)
+            return board.getLegalMoves().iterator().next();
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        reuseTree();
+        startTime = System.nanoTime();
+        started.set(0);
+        playouts.set(0);
+        finished = false;
+
+        List<Future<?>> running = new ArrayList<>();
+        for (Worker helper : helpers)
+            running.add(pool.submit(helper));
+        try {
+            main.run();
+        } finally {
+            finished = true;
+            for (Future<?> f : running)
+                Futures.await(f);
+        }
+
+        // the turn played most often is the one the playouts
+        // are most sure of
+        Node best = null;
+        for (Node child : root.children) {
+            if (best == null || child.visits > best.visits
+                    || (child.visits == best.visits && child.reward > best.reward))
+                best = child;
+        }
+        double chance = (best.visits == 0) ? 0.5 : best.reward / best.visits;
+        if (!best.black)
+            chance = 1 - chance;
+        chance = Math.max(MIN_CHANCE, Math.min(1 - MIN_CHANCE, chance));
+        value = (int) Math.round(SCORE_SCALE * Math.log(chance / (1 - chance)));
+        stats = new SearchStats(false);
+        stats.addNodes(playouts.get());
+        stats.finish(System.nanoTime() - startTime);
+
+        plan.addAll(board.turnPath(best.turn));
+        planKey = board.getKey();
+        if (event.shouldCommit()) {
+            event.engine = "mcts";
+            event.position = board.toFen();
+            event.move = plan.get(0).toString();
+            event.value = value;
+            event.depth = depth(root);
+            event.nodes = playouts.get();
+            event.leaves = playouts.get();
+            event.threads = helpers.length + 1;
+            event.commit();
+        }
+        return nextJump();
+    }
+
+    /**
+     * Helper method that moves the root of the tree to the current
+     * position, if it is the position the tree was searched from
+     * or comes after one or two turns from it, so that earlier
+     * playouts are kept. Otherwise a new tree is started
+     */
+    private void reuseTree() {
+        Node found = null;
+        if (root != null) {
+            if (rootPosition.equals(board))
+                found = root;
+            for (int i = 0; found == null && root.children != null && i < root.children.length; i++) {
+                Node child = root.children[i];
+                Board next = new Board(rootPosition);
+                next.makeTurn(child.turn);
+                if (next.equals(board)) {
+                    found = child;
+                    break;
+                }
+                for (int j = 0; child.children != null && j < child.children.length; j++) {
+                    Node grandchild = child.children[j];
+                    long undo = next.makeTurn(grandchild.turn);
+                    if (next.equals(board)) {
+                        found = grandchild;
+                        break;
+                    }
+                    next.unmakeTurn(grandchild.turn, undo);
+                }
+            }
+        }
+
+        rootPosition = new Board(board);
+        root = (found != null) ? found : new Node(0, board.getTurn() == Color.RED);
+        root.expand(rootPosition, main.turns);
+    }
+
+    /**
+     * Forgets the tree of earlier searches
+     */
+    @Override
+    public void newGame() {
+        rootPosition = null;
+        root = null;
+        plan.clear();
+        value = 0;
+        stats = null;
+    }
+
+    /**
+     * Does nothing, the search has no iterations to tell about
+     * @param listener ignored
+     */
+    public void setListener(Engine.Listener listener) {
+    }
+
+    /**
+     * Asks the current or next call to getMove(), running on another
+     * thread, to stop running playouts and choose from those finished
+     * so far. The stop holds until clearStop() is called, so it is
+     * not lost if it comes before the search has started
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets any earlier call to stop(), to be called before asking
+     * for a move that may be stopped
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Returns the value of the move returned by the last call to
+     * getMove() that searched, on the scale of Board.getScore(),
+     * worked out from how often the playouts won with it
+     * @return the value of the last move searched for, positive
+     *              is good for black
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the statistics of the last call to getMove() that
+     * searched, which only count playouts, as nodes
+     * @return the statistics of the last search, null if there
+     *              has been none
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the number of playouts run during the last call
+     * to getMove() that searched
+     * @return the number of playouts
+     */
+    long getPlayouts() {
+        return playouts.get();
+    }
+
+    /**
+     * Helper method that takes the next move of the chosen turn,
+     * and works out the key of the board the one after it is
+     * to be played on
+     * @return the next move of the chosen turn
+     */
+    private Move nextJump() {
+        Move move = plan.remove(0);
+        if (!plan.isEmpty()) {
+            Board next = new Board(board);
+            next.move(move);
+            planKey = next.getKey();
+        }
+        return move;
+    }
+
+    /**
+     * Helper method that returns whether the search should stop,
+     * and otherwise counts the playout about to be started
+     * @return true if a limit has been hit or a stop was asked for
+     */
+    private boolean done() {
+        if (stopRequested || finished)
+            return true;
+        if (timeLimit > 0 && (System.nanoTime() - startTime) / 1000000 >= timeLimit)
+            return true;
+        return playoutLimit > 0 && started.getAndIncrement() >= playoutLimit;
+    }
+
+    /**
+     * Helper method that returns the length of the line of most
+     * visited turns from a node
+     * @param node the node to start from
+     * @return the number of turns in the line
+     */
+    private static int depth(Node node) {
+        int depth = 0;
+        while (node.children != null && node.children.length > 0) {
+            Node next = node.children[0];
+            for (Node child : node.children) {
+                if (child.visits > next.visits)
+                    next = child;
+            }
+            node = next;
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * A position in the tree, reached by a turn from its parent,
+     * with how often playouts went through it and how well they
+     * did for the player who made the turn. Visits are counted
+     * when a playout passes on its way down, and rewards when it
+     * is done
+     */
+    private static final class Node {
+        // the packed turn that leads here, 0 at a new root
+        final long turn;
+        // whether black made the turn
+        final boolean black;
+        // the positions after each legal turn, null until expanded
+        volatile Node[] children;
+        // playouts through the node, and the sum of their rewards,
+        // 1 for a win and 0 for a loss
+        volatile int visits;
+        volatile double reward;
+
+        /**
+         * Creates a node no playout has been through
+         * @param turn the packed turn that leads to it
+         * @param black whether black made the turn
+         */
+        Node(long turn, boolean black) {
+            this.turn = turn;
+            this.black = black;
+        }
+
+        /**
+         * Adds a node for each legal turn, unless that has been done
+         * @param position the position of this node
+         * @param turns buffer for the legal turns, MAX_TURNS long
+         * @return the children of the node, empty if the game is over
+         */
+        Node[] expand(Board position, long[] turns) {
+            Node[] result = children;
+            if (result != null)
+                return result;
+            synchronized (this) {
+                if (children == null) {
+                    int count = position.generateTurns(turns, 0);
+                    Node[] nodes = new Node[count];
+                    boolean black = (position.getTurn() == Color.BLACK);
+                    for (int i = 0; i < count; i++)
+                        nodes[i] = new Node(turns[i], black);
+                    children = nodes;
+                }
+                return children;
+            }
+        }
+
+        /**
+         * Counts a playout on its way down through the node
+         * @return the number of visits, counting this one
+         */
+        synchronized int visit() {
+            return ++visits;
+        }
+
+        /**
+         * Adds the result of a playout that went through the node
+         * @param blackReward the reward of the playout for black
+         */
+        synchronized void update(double blackReward) {
+            reward += black ? blackReward : 1 - blackReward;
+        }
+    }
+
+    /**
+     * Runs playouts from the root until the search is done, with
+     * its own random number generator and buffers
+     */
+    private final class Worker implements Runnable {
+        // object to choose turns with
+        private final Random random;
+        // buffer for the legal turns of a position
+        final long[] turns;
+        // the nodes the current playout went through, the root first
+        private final List<Node> path;
+
+        /**
+         * Creates a worker
+         * @param random the random number generator it uses
+         */
+        Worker(Random random) {
+            this.random = random;
+            this.turns = new long[Board.MAX_TURNS];
+            this.path = new ArrayList<>();
+        }
+
+        /**
+         * Runs playouts until the search is done
+         */
+        public void run() {
+            while (!done()) {
+                playout();
+                playouts.incrementAndGet();
+            }
+        }
+
+        /**
+         * Helper method that runs one playout: walks down the tree
+         * by UCT until it reaches a node no playout has been through,
+         * plays on at random from there, and adds the result to each
+         * node on the way
+         */
+        private void playout() {
+            Board position = new Board(rootPosition);
+            path.clear();
+            Node node = root;
+            node.visit();
+            while (true) {
+                Node[] children = node.expand(position, turns);
+                if (children.length == 0)
+                    break;
+                node = select(node, children);
+                position.makeTurn(node.turn);
+                path.add(node);
+                if (node.visit() == 1)
+                    break;
+            }
+
+            double reward = rollout(position);
+            for (Node n : path)
+                n.update(reward);
+        }
+
+        /**
+         * Helper method that chooses the child to walk down to by
+         * UCT, children no playout has been through come first
+         * @param parent the node to choose from
+         * @param children the children of parent
+         * @return the chosen child
+         */
+        private Node select(Node parent, Node[] children) {
+            double logVisits = Math.log(Math.max(1, parent.visits));
+            int offset = random.nextInt(children.length);
+            Node best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < children.length; i++) {
+                Node child = children[(i + offset) % children.length];
+                int visits = child.visits;
+                if (visits == 0)
+                    return child;
+                double score = child.reward / visits + exploration * Math.sqrt(logVisits / visits);
+                if (score > bestScore) {
+                    best = child;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Helper method that plays random turns from a position for
+         * PLAYOUT_TURNS turns or until the game is over
+         * @param position the position to play from, which is changed
+         * @return 1 if black won, 0 if red won, and black's chance of
+         *              winning as estimated from Board.getScore() if
+         *              the game was not finished
+         */
+        private double rollout(Board position) {
+            for (int i = 0; i < PLAYOUT_TURNS; i++) {
+                int count = position.generateTurns(turns, 0);
+                if (count == 0)
+                    return (position.getTurn() == Color.BLACK) ? 0 : 1;
+                position.makeTurn(turns[random.nextInt(count)]);
+            }
+            return 1 / (1 + Math.exp(-position.getScore() / SCORE_SCALE));
+        }
+    }
+}
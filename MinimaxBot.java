@@ -3,18 +3,36 @@ import java.util.*;
 /**
  * Implementation of the Player interface that
  * uses a decision tree and a truncated minimax
- * algorithm to find a move
+ * algorithm to find a move. A whole multi-jump
+ * is searched as a single move, and once one is
+ * chosen its remaining jumps are played without
+ * searching again. The values of positions searched
+ * are kept in a transposition table from move to move,
+ * so positions reached again, by another order of the
+ * same turns or in a later search, are not searched twice
  */
 public class MinimaxBot implements Player {
     // Limit on the depth of the decision tree (gets slow above 7)
     private static final int MAX_DEPTH = 7;
+    // Memory budget of the table of values, in megabytes
+    private static final int TABLE_MEGABYTES = 8;
     
     // The board being played on
     private Board board;
     // Trashy field to keep track of the value of node
-    private Map<Integer, List<Move>> map;
+    private Map<Integer, List<Long>> map;
+    // The remaining jumps of the last turn chosen, and the key
+    // of the board the first of them is to be played on
+    private List<Move> plan;
+    private long planKey;
     // Used for deciding between equally valued moves
     private Random r;
+    // Buffers for the packed legal turns at each depth of the tree
+    private long[][] moves;
+    // Buffers for the packed capture turns at each ply past the end of the tree
+    private long[][] jumps;
+    // Exact values of positions searched, kept between moves
+    private TranspositionTable table;
 
     /**
      * Create a new instance of MinimaxBot with a
@@ -23,9 +41,25 @@ public class MinimaxBot implements Player {
      * @param board the board being played on
      */
     public MinimaxBot(Board board) {
+        this(board, new Random());
+    }
+
+    /**
+     * Create a new instance of MinimaxBot with a
+     * reference to the current board being played
+     * on, that decides between equally valued moves
+     * with the given random number generator
+     * @param board the board being played on
+     * @param r the random number generator to use
+     */
+    public MinimaxBot(Board board, Random r) {
         this.board = board;
         this.map = new HashMap<>();
-        this.r = new Random();
+        this.plan = new ArrayList<>();
+        this.r = r;
+        this.moves = new long[MAX_DEPTH + 1][Board.MAX_TURNS];
+        this.jumps = new long[Board.MAX_PIECES][Board.MAX_TURNS];
+        this.table = new TranspositionTable(TABLE_MEGABYTES);
     }
 
     /**
@@ -34,11 +68,44 @@ public class MinimaxBot implements Player {
      * @return a legal move
      */
     public Move getMove() {
+        // the rest of a multi-jump was chosen with its first jump
+        if (!plan.isEmpty() && board.getKey() == planKey && board.getLegalMoves().contains(plan.get(0)))
+            return nextJump();
+        plan.clear();
         map.clear();
+        table.newSearch();
+
+        // search on a copy, which is modified and restored in place
+        int v = minimax(new Board(board), MAX_DEPTH);
 
-        int v = minimax(board, MAX_DEPTH);
-       
-        return map.get(v).get(r.nextInt(map.get(v).size()));
+        plan.addAll(board.turnPath(map.get(v).get(r.nextInt(map.get(v).size()))));
+        planKey = board.getKey();
+        return nextJump();
+    }
+
+    /**
+     * Forgets the values of positions searched in earlier moves
+     */
+    @Override
+    public void newGame() {
+        table.clear();
+        plan.clear();
+    }
+
+    /**
+     * Helper method that takes the next move of the chosen turn,
+     * and works out the key of the board the one after it is
+     * to be played on
+     * @return the next move of the chosen turn
+     */
+    private Move nextJump() {
+        Move move = plan.remove(0);
+        if (!plan.isEmpty()) {
+            Board next = new Board(board);
+            next.move(move);
+            planKey = next.getKey();
+        }
+        return move;
     }
 
     /**
@@ -47,16 +114,25 @@ public class MinimaxBot implements Player {
      * a utility value of the best possible path
      * for the current board. Simultaneously, the
      * function fills this.map with utility values
-     * to the current legal moves that result in those
-     * values.
-     * @param board the current state of the board
+     * to the current legal turns that result in those
+     * values. Below the root, the value of a position is
+     * taken from the table if it was searched at least as
+     * deep before.
+     * @param board the current state of the board, moves
+     *              are made and taken back on it in place
      * @param depth the maximum depth of the game tree
      * @return a utility value corresponding to the
      *          best possible path
      */
     private int minimax(Board board, int depth) {
-        if (depth == 1 || board.gameOver())
+        if (board.gameOver())
             return board.getScore();
+        if (depth == 1)
+            return quiesce(board, 0);
+
+        long entry = table.probe(board.getKey());
+        if (entry != 0 && depth != MAX_DEPTH && TranspositionTable.depth(entry) >= depth)
+            return TranspositionTable.score(entry);
         
         // Black aims to maximize the score of the board
         boolean max = (board.getTurn() == Color.BLACK);
@@ -69,12 +145,16 @@ public class MinimaxBot implements Player {
             best = Integer.MAX_VALUE;
 
         // recursively find best value among children
-        for (Move m : board.getLegalMoves()) {
-            int v = minimax(new Board(board, m), depth - 1);
+        int count = board.generateTurns(moves[depth], 0);
+        for (int i = 0; i < count; i++) {
+            long m = moves[depth][i];
+            long undo = board.makeTurn(m);
+            int v = minimax(board, depth - 1);
+            board.unmakeTurn(m, undo);
 
             if (depth == MAX_DEPTH) {
                 if (!map.containsKey(v))
-                    map.put(v, new ArrayList<Move>());
+                    map.put(v, new ArrayList<Long>());
                 map.get(v).add(m);
             }
 
@@ -84,7 +164,46 @@ public class MinimaxBot implements Player {
                 best = Math.min(best, v);
         }
 
+        // every value is exact, minimax has no window
+        table.store(board.getKey(), depth, TranspositionTable.EXACT, best, 0);
         return best;
     }
-}
 
+    /**
+     * Helper method for minimax() that values a position at the
+     * end of the tree. Jumps are mandatory, so while one is
+     * pending the position is searched further, over whole
+     * multi-jumps only, and is only scored once it is quiet
+     * @param board the current state of the board, moves
+     *              are made and taken back on it in place
+     * @param ply the number of turns made past the end of the tree
+     * @return a utility value corresponding to the
+     *          best possible sequence of jumps
+     */
+    private int quiesce(Board board, int ply) {
+        if (!board.hasJumps())
+            return board.getScore();
+
+        boolean max = (board.getTurn() == Color.BLACK);
+        int best;
+        if (max)
+            best = Integer.MIN_VALUE;
+        else
+            best = Integer.MAX_VALUE;
+
+        int count = board.generateTurns(jumps[ply], 0);
+        for (int i = 0; i < count; i++) {
+            long m = jumps[ply][i];
+            long undo = board.makeTurn(m);
+            int v = quiesce(board, ply + 1);
+            board.unmakeTurn(m, undo);
+
+            if (max)
+                best = Math.max(best, v);
+            else
+                best = Math.min(best, v);
+        }
+
+        return best;
+    }
+}
@@ -114,6 +114,6 @@ public class Move {
      */
     @Override
     public int hashCode() {
-        return (int) Math.pow(this.start, 31) * this.end;
+        return 31 * this.start + this.end;
     }
 }
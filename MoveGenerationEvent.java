@@ -0,0 +1,23 @@
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event for one call of Board.generateTurns(). There
+ * is one for every node searched, so it is disabled unless a
+ * recording's settings enable it, and a disabled event costs
+ * next to nothing.
+ */
+@Name("checkers.MoveGeneration")
+@Label("Move Generation")
+@Category("Checkers")
+@Description("Generation of the legal turns of a position")
+@Enabled(false)
+@StackTrace(false)
+final class MoveGenerationEvent extends Event {
+    @Label("Turns")
+    @Description("The number of legal turns generated")
+    int turns;
+
+    @Label("Captures")
+    @Description("Whether the turns are captures")
+    boolean captures;
+}
@@ -0,0 +1,200 @@
+import java.util.*;
+
+/**
+ * The order in which one thread's alpha-beta search tries turns,
+ * with the buffers the turns at each depth of the tree are kept in.
+ * Turns are tried best first, the turn from the transposition table,
+ * then captures of the most valuable pieces by the least valuable
+ * piece, then the two killer turns of the ply, quiet turns that
+ * recently caused cutoffs at the same distance from the root, and
+ * then other turns by their history of cutoffs. Killers only hold
+ * for one search, the history is kept between searches, where it
+ * counts for half as much each time
+ */
+final class MoveOrdering {
+    // order scores of each kind of move, history scores stay below KILLER
+    private static final int HASH_MOVE = 1 << 30;
+    private static final int CAPTURE = 1 << 29;
+    private static final int KILLER = 1 << 28;
+    private static final int MAX_HISTORY = 1 << 20;
+
+    // buffers for the packed legal turns at each depth of the tree,
+    // and the scores used to order them
+    private long[][] moves;
+    private int[][] scores;
+    // two quiet turns per ply from the root that recently caused cutoffs
+    private long[][] killers;
+    // how often quiet moves caused cutoffs, by side, start and end
+    private final int[][][] history;
+
+    /**
+     * Creates an ordering with no history
+     */
+    MoveOrdering() {
+        this.history = new int[2][Board.WIDTH * Board.WIDTH / 2][Board.WIDTH * Board.WIDTH / 2];
+    }
+
+    /**
+     * Prepares for a new search, which forgets the killers of the
+     * last one and ages the history
+     * @param maxDepth the maximum depth of the tree to be searched
+     */
+    void newSearch(int maxDepth) {
+        if (moves == null || moves.length != maxDepth + 1) {
+            moves = new long[maxDepth + 1][Board.MAX_TURNS];
+            scores = new int[maxDepth + 1][Board.MAX_TURNS];
+            killers = new long[maxDepth + 1][2];
+        } else {
+            for (long[] ply : killers)
+                Arrays.fill(ply, 0);
+        }
+        ageHistory();
+    }
+
+    /**
+     * Forgets every history score, for a new game
+     */
+    void clearHistory() {
+        for (int[][] side : history) {
+            for (int[] start : side)
+                Arrays.fill(start, 0);
+        }
+    }
+
+    /**
+     * Generates the legal turns of a position into the buffer of
+     * the given depth and scores them, so that nextMove() returns
+     * them best first
+     * @param board the current state of the board
+     * @param depth the depth of the turns in the tree
+     * @param ply the number of turns made since the root
+     * @param hashMove the id of the best turn stored in the
+     *              transposition table, 0 if none
+     * @param shuffle if not null, every turn but the hash move is
+     *              given a random score, so they are tried in a
+     *              random order after it
+     * @return the number of turns
+     */
+    int generate(Board board, int depth, int ply, int hashMove, Random shuffle) {
+        int count = board.generateTurns(moves[depth], 0);
+        int side = (board.getTurn() == Color.BLACK) ? 0 : 1;
+
+        for (int i = 0; i < count; i++) {
+            long m = moves[depth][i];
+            int score;
+            if (Board.turnId(m) == hashMove)
+                score = HASH_MOVE;
+            else if (shuffle != null)
+                score = shuffle.nextInt(KILLER);
+            else if (Board.isCapture(m))    // most valuable victims, least valuable jumper
+                score = CAPTURE + 8 * capturedValue(board, m) - board.valueAt(Board.turnStart(m));
+            else if (m == killers[ply][0])
+                score = KILLER + 1;
+            else if (m == killers[ply][1])
+                score = KILLER;
+            else
+                score = history[side][Board.turnStart(m)][Board.turnEnd(m)];
+            scores[depth][i] = score;
+        }
+        return count;
+    }
+
+    /**
+     * Moves the highest scored of the turns at the given depth from
+     * index i onwards to index i, and returns it, the first of equally
+     * scored turns is tried first
+     * @param depth the depth of the turns in the tree
+     * @param i the index of the next turn to be tried
+     * @param count the number of turns
+     * @return the next turn to be tried
+     */
+    long nextMove(int depth, int i, int count) {
+        long[] list = moves[depth];
+        int[] score = scores[depth];
+
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (score[j] > score[best])
+                best = j;
+        }
+
+        long m = list[best];
+        list[best] = list[i];
+        list[i] = m;
+        int s = score[best];
+        score[best] = score[i];
+        score[i] = s;
+        return m;
+    }
+
+    /**
+     * Puts the turns at the given depth, with their scores, in a
+     * random order, so that equally scored turns are tried in a
+     * random order
+     * @param depth the depth of the turns in the tree
+     * @param count the number of turns
+     * @param r the random number generator to use
+     */
+    void shuffle(int depth, int count, Random r) {
+        long[] list = moves[depth];
+        int[] score = scores[depth];
+        for (int i = count - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            long m = list[j];
+            list[j] = list[i];
+            list[i] = m;
+            int s = score[j];
+            score[j] = score[i];
+            score[i] = s;
+        }
+    }
+
+    /**
+     * Remembers a quiet turn that caused a cutoff, as a killer for
+     * its ply and in the history table
+     * @param board the current state of the board
+     * @param depth the depth of the turn in the tree
+     * @param ply the number of turns made since the root
+     * @param m the packed turn that caused the cutoff
+     */
+    void recordCutoff(Board board, int depth, int ply, long m) {
+        if (Board.isCapture(m))
+            return;
+
+        if (killers[ply][0] != m) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = m;
+        }
+
+        int side = (board.getTurn() == Color.BLACK) ? 0 : 1;
+        history[side][Board.turnStart(m)][Board.turnEnd(m)] += depth * depth;
+        if (history[side][Board.turnStart(m)][Board.turnEnd(m)] > MAX_HISTORY)
+            ageHistory();
+    }
+
+    /**
+     * Helper method that returns the total value of the pieces
+     * a turn captures
+     * @param board the current state of the board
+     * @param m the packed capture turn
+     * @return the value of the captured pieces
+     */
+    private static int capturedValue(Board board, long m) {
+        int value = 0;
+        for (int pieces = Board.turnCaptured(m); pieces != 0; pieces &= pieces - 1)
+            value += board.valueAt(Integer.numberOfTrailingZeros(pieces));
+        return value;
+    }
+
+    /**
+     * Helper method that halves every history score
+     */
+    private void ageHistory() {
+        for (int[][] side : history) {
+            for (int[] start : side) {
+                for (int end = 0; end < start.length; end++)
+                    start[end] >>= 1;
+            }
+        }
+    }
+}
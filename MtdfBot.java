@@ -0,0 +1,460 @@
+import java.util.*;
+
+/**
+ * Implementation of Player that finds the minimax value with
+ * MTD(f), a sequence of zero-window alpha-beta searches, each of
+ * which only says whether the value is above or below a guess.
+ * Every search moves the bounds on the value closer together
+ * until they meet. The searches are cheap because a zero window
+ * cuts off as early as possible, and they revisit the same tree,
+ * so results are kept in a transposition table and each search
+ * reuses what the last one found. The tree is searched one ply
+ * deeper at a time, and the value of each depth is the first
+ * guess for the next, until the depth, time or node limit is hit
+ * or the search is stopped, when the move of the deepest finished
+ * depth is played. A whole multi-jump is searched as a single
+ * move, and once one is chosen its remaining jumps are played
+ * without searching again.
+ */
+public class MtdfBot implements Engine {
+    // default max depth of the game-tree
+    private static final int MAX_DEPTH = 12;
+    // number of nodes searched between checks of the limits
+    private static final int CHECK_INTERVAL = 1024;
+
+    // reference to the current board
+    private Board board;
+    // object to order root moves with, so that equally valued
+    // moves are picked at random
+    private Random r;
+    // results of earlier searches, kept between moves
+    private TranspositionTable table;
+    // limits on each search, 0 if there is no time or node limit
+    private int maxDepth;
+    private long timeLimit;
+    private long nodeLimit;
+    // start time (in nanoseconds) of the current search
+    private long startTime;
+    // set when a limit is hit, the current depth is then abandoned
+    private boolean aborted;
+    // set by stop() from another thread, the search ends as if
+    // it hit a limit, until cleared by clearStop()
+    private volatile boolean stopRequested;
+    // told about each iteration as it finishes, null if no one
+    private Engine.Listener listener;
+    // depth of the current iteration, the root of the tree
+    private int rootDepth;
+    // the order turns are tried in, the same as PruningBot's, with
+    // the buffers they are kept in
+    private MoveOrdering ordering;
+    // buffers for the packed capture turns at each ply past the end of the tree
+    private long[][] jumps;
+    // best turn at the root found by the last zero-window search
+    private long rootBest;
+    // value of the move returned by the last search
+    private int value;
+    // statistics of the current or last search, null before the first
+    private SearchStats stats;
+    // the remaining jumps of the last turn chosen, and the key of
+    // the board the first of them is to be played on
+    private List<Move> plan;
+    private long planKey;
+
+    /**
+     * Creates a new instance of MtdfBot with a reference
+     * to the current state of the board
+     * @param board the current state of the board
+     */
+    public MtdfBot(Board board) {
+        this(board, new Random());
+    }
+
+    /**
+     * Creates a new instance of MtdfBot with a reference
+     * to the current state of the board, that decides
+     * between equally valued moves with the given random
+     * number generator
+     * @param board the current state of the board
+     * @param r the random number generator to use
+     */
+    public MtdfBot(Board board, Random r) {
+        this(board, PruningBot.TABLE_MEGABYTES, r);
+    }
+
+    /**
+     * Creates a new instance of MtdfBot with a reference
+     * to the current state of the board, and a transposition
+     * table of the given size, that decides between equally
+     * valued moves with the given random number generator
+     * @param board the current state of the board
+     * @param tableMegabytes the memory budget of the
+     *              transposition table, in megabytes
+     * @param r the random number generator to use
+     * @throws IllegalArgumentException if tableMegabytes is
+     *              less than 1 or more than 1024
+     */
+    public MtdfBot(Board board, int tableMegabytes, Random r) {
+        this.board = board;
+        this.r = r;
+        this.table = new TranspositionTable(tableMegabytes);
+        this.ordering = new MoveOrdering();
+        this.jumps = new long[Board.MAX_PIECES][Board.MAX_TURNS];
+        this.plan = new ArrayList<>();
+        setDepth(MAX_DEPTH);
+    }
+
+    /**
+     * Sets the depth of the tree searched for each move, with no
+     * time or node limit
+     * @param depth the maximum depth of the tree
+     * @throws IllegalArgumentException if depth is less than 2
+     */
+    public void setDepth(int depth) {
+        setLimits(depth, 0, 0);
+    }
+
+    /**
+     * Sets the limits on each search, the search stops at
+     * whichever limit is hit first. The search always
+     * completes a depth of one ply
+     * @param depth the maximum depth of the tree
+     * @param millis the maximum time per move in milliseconds,
+     *              0 for no limit
+     * @param nodes the maximum number of nodes searched per move,
+     *              0 for no limit
+     * @throws IllegalArgumentException if depth is less than 2,
+     *              or millis or nodes is negative
+     */
+    public void setLimits(int depth, long millis, long nodes) {
+        if (depth < 2 || millis < 0 || nodes < 0)
+            throw new IllegalArgumentException("illegal limits: depth = " + depth +
+                    ", millis = " + millis + ", nodes = " + nodes);
+        this.maxDepth = depth;
+        this.timeLimit = millis;
+        this.nodeLimit = nodes;
+    }
+
+    /**
+     * Returns a legal move on the current board, as chosen by
+     * MTD(f) on game trees of increasing depth, from the deepest
+     * tree that was searched completely within the limits, unless
+     * the move is the next jump of a multi-jump already chosen
+     * @return a legal move on the current board
+     */
+    public Move getMove() {
+        if (!plan.isEmpty() && board.getKey() == planKey && board.getLegalMoves().contains(plan.get(0)))
+            return nextJump();
+        plan.clear();
+
+        if (board.getLegalMoves().size() == 1)
+            return board.getLegalMoves().iterator().next();
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        startTime = start;
+        aborted = false;
+        table.newSearch();
+        // the buffers are sized for this depth, so limits set while
+        // the search runs don't change it
+        int limit = maxDepth;
+        ordering.newSearch(limit);
+        stats = new SearchStats(true);
+
+        // search on a copy, which is modified and restored in place
+        Board position = new Board(board);
+        boolean max = (position.getTurn() == Color.BLACK);
+        int guess = position.getScore();
+        long best = 0;
+        for (rootDepth = 2; rootDepth <= limit; rootDepth++) {
+            long iterationStart = System.nanoTime();
+            long iterationNodes = stats.getNodes();
+            int lower = Integer.MIN_VALUE;
+            int upper = Integer.MAX_VALUE;
+
+            int iterationGuess = guess;
+            long iterationBest = best;
+
+            // each search tests whether the value is at least beta,
+            // and the best turn is the one that proved the final bound
+            while (lower < upper) {
+                int beta = (iterationGuess == lower) ? iterationGuess + 1 : iterationGuess;
+                iterationGuess = alphabeta(position, beta - 1, beta, rootDepth);
+                if (aborted)
+                    break;
+                if (iterationGuess < beta) {
+                    upper = iterationGuess;
+                    if (!max)
+                        iterationBest = rootBest;
+                } else {
+                    lower = iterationGuess;
+                    if (max)
+                        iterationBest = rootBest;
+                }
+            }
+            // an abandoned depth says nothing, the last one stands
+            if (aborted)
+                break;
+            guess = iterationGuess;
+            best = iterationBest;
+            value = guess;
+            iterationNodes = stats.getNodes() - iterationNodes;
+            long iterationNanos = System.nanoTime() - iterationStart;
+            stats.iteration(rootDepth, iterationNodes, iterationNanos);
+            if (listener != null)
+                listener.iteration(rootDepth, iterationNodes, iterationNanos);
+        }
+        stats.finish(System.nanoTime() - start);
+
+        plan.addAll(board.turnPath(best));
+        planKey = board.getKey();
+        if (event.shouldCommit()) {
+            event.engine = "mtdf";
+            event.position = board.toFen();
+            event.move = plan.get(0).toString();
+            event.value = value;
+            event.depth = stats.getIterationDepth(stats.getIterations() - 1);
+            event.nodes = stats.getNodes();
+            event.leaves = stats.getLeaves();
+            event.threads = 1;
+            event.commit();
+        }
+        return nextJump();
+    }
+
+    /**
+     * Forgets the results of earlier searches
+     */
+    @Override
+    public void newGame() {
+        table.clear();
+        ordering.clearHistory();
+        plan.clear();
+        value = 0;
+        stats = null;
+    }
+
+    /**
+     * Sets who is told about each iteration of later searches
+     * @param listener the listener, null for none
+     */
+    public void setListener(Engine.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Asks the current or next call to getMove(), running on another
+     * thread, to stop searching and return the best move of the
+     * deepest depth finished so far, as if it hit a limit. The stop
+     * holds until clearStop() is called, so it is not lost if it
+     * comes before the search has started
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets any earlier call to stop(), to be called before asking
+     * for a move that may be stopped
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Returns the value of the move returned by the last call to
+     * getMove() that searched, positive is good for black
+     * @return the value of the last move searched for
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the number of nodes searched during the last call
+     * to getMove() that searched
+     * @return the number of nodes searched
+     */
+    long getNodes() {
+        return (stats == null) ? 0 : stats.getNodes();
+    }
+
+    /**
+     * Returns the statistics of the last call to getMove() that
+     * searched
+     * @return the statistics of the last search, null if there
+     *              has been none
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Helper method that counts a node and checks whether the
+     * search has hit one of its limits, the first depth is always
+     * allowed to finish
+     * @return true if the current depth has to be abandoned
+     */
+    private boolean outOfBudget() {
+        stats.node();
+        if (stats.getNodes() % CHECK_INTERVAL == 0 && rootDepth > 2) {
+            if (stopRequested || (nodeLimit > 0 && stats.getNodes() >= nodeLimit)
+                    || (timeLimit > 0 && (System.nanoTime() - startTime) / 1000000 >= timeLimit))
+                aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Helper method that takes the next move of the chosen turn,
+     * and works out the key of the board the one after it is
+     * to be played on
+     * @return the next move of the chosen turn
+     */
+    private Move nextJump() {
+        Move move = plan.remove(0);
+        if (!plan.isEmpty()) {
+            Board next = new Board(board);
+            next.move(move);
+            planKey = next.getKey();
+        }
+        return move;
+    }
+
+    /**
+     * Helper method for getMove() that runs alpha-beta with
+     * memory, failing soft so that a value outside the window
+     * is as tight a bound as the search found. At the root the
+     * best turn is kept in rootBest
+     * @param board the current state of the board, moves
+     *              are made and taken back on it in place
+     * @param alpha the minimum bound on utility values to continue
+     *              building tree on
+     * @param beta the maximum bound on utility values to continue
+     *              building tree on
+     * @param depth the maximum depth of the tree to build
+     * @return the utility value of the position if it is inside
+     *              the window, an upper bound if at most alpha,
+     *              a lower bound if at least beta, meaningless if
+     *              the search was aborted
+     */
+    private int alphabeta(Board board, int alpha, int beta, int depth) {
+        if (outOfBudget())
+            return 0;
+        if (board.gameOver()) { // terminal case
+            stats.leaf();
+            return board.getScore();
+        }
+        if (depth == 1)
+            return quiesce(board, alpha, beta, 0);
+
+        // use what is known about this position from earlier,
+        // except at the root where the best turn is needed
+        long key = board.getKey();
+        long entry = table.probe(key);
+        stats.probe(entry != 0);
+        if (entry != 0 && depth != rootDepth && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= beta)
+                    || (bound == TranspositionTable.UPPER && score <= alpha))
+                return score;
+        }
+
+        // black aims to maximize the score of the board
+        boolean max = (board.getTurn() == Color.BLACK);
+        int best = max ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long bestMove = 0;
+        int a = alpha;
+        int b = beta;
+
+        int count = ordering.generate(board, depth, rootDepth - depth, TranspositionTable.move(entry), null);
+        // the first of equally ordered turns is tried first, and
+        // proves the bound if it is as good as the best
+        if (depth == rootDepth)
+            ordering.shuffle(depth, count, r);
+        for (int i = 0; i < count && a < b; i++) {
+            long m = ordering.nextMove(depth, i, count);
+            long undo = board.makeTurn(m);
+            int v = alphabeta(board, a, b, depth - 1);
+            board.unmakeTurn(m, undo);
+            // a value from an abandoned subtree must not be stored
+            if (aborted)
+                return 0;
+
+            if (max ? v > best : v < best) {
+                best = v;
+                bestMove = m;
+            }
+            if (max)
+                a = Math.max(a, best);
+            else
+                b = Math.min(b, best);
+            if (a >= b) {
+                ordering.recordCutoff(board, depth, rootDepth - depth, m);
+                stats.cutoff(i);
+            }
+        }
+
+        if (depth == rootDepth)
+            rootBest = bestMove;
+
+        if (best <= alpha)
+            table.store(key, depth, TranspositionTable.UPPER, best, Board.turnId(bestMove));
+        else if (best >= beta)
+            table.store(key, depth, TranspositionTable.LOWER, best, Board.turnId(bestMove));
+        else
+            table.store(key, depth, TranspositionTable.EXACT, best, Board.turnId(bestMove));
+        return best;
+    }
+
+    /**
+     * Helper method for alphabeta() that values a position at
+     * the end of the tree. Jumps are mandatory, so while one is
+     * pending the position is searched further, over whole
+     * multi-jumps only, and is only scored once it is quiet
+     * @param board the current state of the board, moves
+     *              are made and taken back on it in place
+     * @param alpha the minimum bound on utility values to continue
+     *              building tree on
+     * @param beta the maximum bound on utility values to continue
+     *              building tree on
+     * @param ply the number of turns made past the end of the tree
+     * @return the utility value of the best sequence of jumps, or
+     *              a bound on it as by alphabeta(), meaningless if
+     *              the search was aborted
+     */
+    private int quiesce(Board board, int alpha, int beta, int ply) {
+        if (outOfBudget())
+            return 0;
+        if (!board.hasJumps()) {
+            stats.leaf();
+            return board.getScore();
+        }
+
+        boolean max = (board.getTurn() == Color.BLACK);
+        int best = max ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+        int count = board.generateTurns(jumps[ply], 0);
+        for (int i = 0; i < count && alpha < beta; i++) {
+            long m = jumps[ply][i];
+            long undo = board.makeTurn(m);
+            int v = quiesce(board, alpha, beta, ply + 1);
+            board.unmakeTurn(m, undo);
+
+            if (max) {
+                best = Math.max(best, v);
+                alpha = Math.max(alpha, best);
+            } else {
+                best = Math.min(best, v);
+                beta = Math.min(beta, best);
+            }
+            if (alpha >= beta)
+                stats.cutoff(i);
+        }
+
+        return best;
+    }
+}
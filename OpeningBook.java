@@ -0,0 +1,113 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Read-only opening book, holding good moves for positions early in
+ * the game, as written by BookBuilder. The file is a hash table keyed
+ * by Zobrist key that is memory-mapped, so looking up a position is a
+ * read or two instead of a search.
+ */
+final class OpeningBook {
+    /*
+     * The file starts with MAGIC, VERSION, the number of slots (a power
+     * of two) and the number of moves, followed by the slots. Each slot
+     * is SLOT_SIZE bytes, the key of the position (0 if the slot is
+     * empty), the score of the move (positive is good for black, as by
+     * Board.getScore()), the packed move (as by Board.generateMoves())
+     * and the weight of the move. A position with several moves has
+     * one slot per move, a move lives in the first empty slot at or
+     * after slot(key)
+     */
+
+    // File header
+    static final int MAGIC = 0x434B4F42;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    // Bytes per slot
+    static final int SLOT_SIZE = Long.BYTES + Integer.BYTES + 2 * Short.BYTES;
+
+    // The slots of the table
+    private final ByteBuffer slots;
+    // Number of slots - 1
+    private final int mask;
+    // Number of moves in the book
+    private final int size;
+
+    /**
+     * Opens the opening book file at the given path
+     * @param path the path of the file
+     * @throws IOException if the file can't be read or is not
+     *              an opening book
+     */
+    OpeningBook(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.capacity() < HEADER_SIZE || file.getInt(0) != MAGIC || file.getInt(4) != VERSION)
+                throw new IOException(path + " is not a checkers opening book");
+
+            int count = file.getInt(8);
+            if (Integer.bitCount(count) != 1 || file.capacity() != HEADER_SIZE + (long) count * SLOT_SIZE)
+                throw new IOException(path + " is truncated");
+            this.mask = count - 1;
+            this.size = file.getInt(12);
+            this.slots = file.position(HEADER_SIZE).slice();
+        }
+    }
+
+    /**
+     * Returns the number of moves in the book
+     * @return the number of moves
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a book move for the position, chosen at random with
+     * the chance of each move in proportion to its weight
+     * @param board the position to look up
+     * @param r the source of randomness
+     * @return a legal move on the board, null if the position
+     *              is not in the book
+     */
+    Move probe(Board board, Random r) {
+        long key = board.getKey();
+        int total = 0;
+        int chosen = 0;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int at = i * SLOT_SIZE;
+            long k = slots.getLong(at);
+            if (k == 0)
+                break;
+            if (k != key)
+                continue;
+
+            // reservoir sampling, by weight
+            int weight = slots.getShort(at + 14) & 0xFFFF;
+            total += weight;
+            if (weight > 0 && r.nextInt(total) < weight)
+                chosen = slots.getShort(at + 12) & 0xFFFF;
+        }
+        if (chosen == 0)
+            return null;
+
+        // a different position with the same key would have moves
+        // that aren't legal here
+        Move move = Board.toMove(chosen);
+        return board.getLegalMoves().contains(move) ? move : null;
+    }
+
+    /**
+     * Returns the first slot a key can live in
+     * @param key the Zobrist key of the position
+     * @param mask the number of slots - 1
+     * @return the number of the slot
+     */
+    static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
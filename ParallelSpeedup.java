@@ -0,0 +1,81 @@
+import java.util.*;
+
+/**
+ * Measures how much faster PruningBot reaches a fixed depth with more
+ * threads, by timing searches of the same positions at each thread
+ * count and printing the speedup over one thread
+ */
+public class ParallelSpeedup {
+    // number of positions searched at each thread count
+    private static final int POSITIONS = 12;
+    // seed for the random games the positions are taken from
+    private static final long SEED = 42;
+
+    /**
+     * Prints the speedup curve of PruningBot
+     * @param args optional, args[0] is the depth to search to
+     *              (default 12) and args[1] the most threads to
+     *              try (default the number of processors)
+     */
+    public static void main(String[] args) {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 12;
+        int maxThreads = (args.length > 1) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        List<Board> positions = createPositions();
+        System.out.println("Depth " + depth + ", " + positions.size() + " positions, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.println("threads\ttime (ms)\tspeedup");
+
+        // warm up the JIT before timing anything
+        search(positions, depth - 2, 1);
+
+        long base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long time = search(positions, depth, threads);
+            if (threads == 1)
+                base = time;
+            System.out.printf("%d\t%d\t\t%.2f%n", threads, time, (double) base / Math.max(time, 1));
+        }
+    }
+
+    /**
+     * Helper method that searches every position to the given
+     * depth, with a new bot (and so an empty table) each time
+     * @param positions the positions to search
+     * @param depth the depth to search to
+     * @param threads the number of threads to search on
+     * @return the total time taken in milliseconds
+     */
+    private static long search(List<Board> positions, int depth, int threads) {
+        long start = System.nanoTime();
+        for (Board position : positions) {
+            PruningBot bot = new PruningBot(position, 32, threads);
+            bot.setLimits(depth, 0, 0);
+            bot.getMove();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Helper method that creates the positions to search, from
+     * the middle of random games so that they aren't trivial
+     * @return the positions to search
+     */
+    private static List<Board> createPositions() {
+        Random r = new Random(SEED);
+        List<Board> result = new ArrayList<>();
+        while (result.size() < POSITIONS) {
+            Board board = new Board();
+            int plies = 8 + r.nextInt(16);
+            for (int i = 0; i < plies && !board.gameOver(); i++) {
+                List<Move> moves = new ArrayList<>(board.getLegalMoves());
+                moves.sort(Comparator.comparing(Move::toString));
+                board.move(moves.get(r.nextInt(moves.size())));
+            }
+            if (!board.gameOver() && board.getLegalMoves().size() > 1)
+                result.add(board);
+        }
+        return result;
+    }
+}
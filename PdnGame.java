@@ -0,0 +1,116 @@
+import java.util.*;
+
+/**
+ * One game record in Portable Draughts Notation: its tag pairs, the
+ * turns played, each with an optional comment, and the result. Each
+ * turn is the moves of one player's turn, as played on Board, so a
+ * multi-jump is several moves. The game starts from the position of
+ * its FEN tag, or from the start of a game if it has none.
+ */
+final class PdnGame {
+    /**
+     * Result of a game that is unfinished or unknown
+     */
+    static final String UNKNOWN = "*";
+
+    // tag pairs, in the order they were read or set
+    private final Map<String, String> tags;
+    // the moves of each turn, in order
+    private final List<List<Move>> turns;
+    // comment after each turn, null if none
+    private final List<String> comments;
+    // the result, 1-0 if black won, 0-1 if red won
+    private String result;
+
+    /**
+     * Creates an empty game from the start of a game, with an
+     * unknown result
+     */
+    PdnGame() {
+        this.tags = new LinkedHashMap<>();
+        this.turns = new ArrayList<>();
+        this.comments = new ArrayList<>();
+        this.result = UNKNOWN;
+    }
+
+    /**
+     * Returns the tag pairs of the game, which can be changed
+     * @return the tags by name, in order
+     */
+    Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the position the game starts from
+     * @return a new board holding the start of the game
+     * @throws IllegalArgumentException if the FEN tag is not a
+     *              legal position
+     */
+    Board getStart() {
+        String fen = tags.get("FEN");
+        return (fen == null) ? new Board() : Board.fromFen(fen);
+    }
+
+    /**
+     * Returns the number of turns played
+     * @return the number of turns
+     */
+    int size() {
+        return turns.size();
+    }
+
+    /**
+     * Returns the moves of a turn
+     * @param i the number of the turn, 0 for the first
+     * @return the moves of the turn, in order
+     */
+    List<Move> getTurn(int i) {
+        return turns.get(i);
+    }
+
+    /**
+     * Adds a turn played after the others
+     * @param moves the moves of the turn, in order
+     * @param comment the comment after the turn, null if none
+     */
+    void addTurn(List<Move> moves, String comment) {
+        turns.add(moves);
+        comments.add(comment);
+    }
+
+    /**
+     * Returns the comment after a turn
+     * @param i the number of the turn, 0 for the first
+     * @return the comment, null if none
+     */
+    String getComment(int i) {
+        return comments.get(i);
+    }
+
+    /**
+     * Sets the comment after a turn
+     * @param i the number of the turn, 0 for the first
+     * @param comment the comment, null for none
+     */
+    void setComment(int i, String comment) {
+        comments.set(i, comment);
+    }
+
+    /**
+     * Returns the result of the game
+     * @return 1-0 if black won, 0-1 if red won, 1/2-1/2 for a draw,
+     *              or UNKNOWN
+     */
+    String getResult() {
+        return result;
+    }
+
+    /**
+     * Sets the result of the game
+     * @param result the result, as by getResult()
+     */
+    void setResult(String result) {
+        this.result = result;
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads game records in Portable Draughts Notation one at a time
+ * from a stream, so files of any size can be read in constant
+ * memory. Each game's moves are checked by playing them on a Board
+ * from the game's start, and a move may be written with only its
+ * start and end, such as 9x27, when that picks out a single legal
+ * turn. Comments after a move are kept, variations, NAGs and move
+ * strength marks such as ! and ? are skipped.
+ */
+final class PdnReader implements Closeable {
+    // tokens that end a game
+    private static final Set<String> RESULTS = new HashSet<>(
+            Arrays.asList("1-0", "0-1", "1/2-1/2", "2-0", "0-2", "1-1", PdnGame.UNKNOWN));
+    // the result each result token is read as
+    private static final Map<String, String> RESULT_NAMES = new HashMap<>();
+    static {
+        RESULT_NAMES.put("2-0", "1-0");
+        RESULT_NAMES.put("0-2", "0-1");
+        RESULT_NAMES.put("1-1", "1/2-1/2");
+    }
+    // characters that end a word of move text
+    private static final String DELIMITERS = "[]{}();";
+
+    // where records are read from
+    private final PushbackReader in;
+    // number of the line being read, for errors
+    private int line;
+    // number of games read, for errors
+    private int games;
+    // buffer for the legal turns of a position
+    private final long[] turns;
+
+    /**
+     * Creates a reader of the records in a stream
+     * @param in the stream to read from
+     */
+    PdnReader(Reader in) {
+        this.in = new PushbackReader(new BufferedReader(in), 1);
+        this.line = 1;
+        this.turns = new long[Board.MAX_TURNS];
+    }
+
+    /**
+     * Reads the next game. A game that can't be understood is read
+     * to its end before the error is thrown, so reading can go on
+     * with the game after it
+     * @return the next game, null if there are no more
+     * @throws IOException if the stream can't be read
+     * @throws IllegalArgumentException if the game is not valid
+     *              PDN or has an illegal move
+     */
+    PdnGame next() throws IOException {
+        PdnGame game = new PdnGame();
+        List<String> moves = new ArrayList<>();
+        // comment after each move, null if none
+        List<String> comments = new ArrayList<>();
+        String error = null;
+        // line the game starts on
+        int start = -1;
+        games++;
+
+        int c;
+        while ((c = skipSpace()) >= 0) {
+            if (start < 0)
+                start = line;
+            if (c == '[') {
+                // a tag after move text starts the next game
+                if (!moves.isEmpty()) {
+                    in.unread(c);
+                    break;
+                }
+                String tag = readUntil(']');
+                String[] pair = parseTag(tag);
+                if (pair == null) {
+                    if (error == null)
+                        error = "bad tag [" + tag + "]";
+                } else {
+                    game.getTags().put(pair[0], pair[1]);
+                }
+            } else if (c == '{') {
+                String comment = readUntil('}').trim();
+                if (!comments.isEmpty())
+                    comments.set(comments.size() - 1, comment);
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == ';') {
+                readUntil('\n');
+                line++;
+            } else {
+                in.unread(c);
+                String word = readWord();
+                if (RESULTS.contains(word)) {
+                    game.setResult(RESULT_NAMES.getOrDefault(word, word));
+                    break;
+                }
+                word = word.replaceFirst("^\\d+\\.+", "").replaceFirst("[!?]+$", "");
+                if (word.isEmpty() || word.startsWith("$"))
+                    continue;
+                if (word.matches("\\d+([-x]\\d+)+")) {
+                    moves.add(word);
+                    comments.add(null);
+                } else if (error == null) {
+                    error = "unexpected " + word + " on line " + line;
+                }
+            }
+        }
+        if (c < 0 && moves.isEmpty() && game.getTags().isEmpty())
+            return null;
+        if (error != null)
+            throw new IllegalArgumentException("game " + games + " at line " + start + ": " + error);
+
+        try {
+            Board board = game.getStart();
+            for (int i = 0; i < moves.size(); i++)
+                game.addTurn(parseTurn(board, moves.get(i), turns), comments.get(i));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("game " + games + " at line " + start + ": " + e.getMessage());
+        }
+        return game;
+    }
+
+    /**
+     * Plays a turn in PDN notation on a board, the turn may list
+     * only some of the places a multi-jump lands on, as long as a
+     * single legal turn matches
+     * @param board the board to play on, at the start of a turn
+     * @param turn the turn, such as 9-14, 9x18x27 or 9x27
+     * @return the moves played, in order
+     * @throws IllegalArgumentException if the turn is not legal,
+     *              or matches more than one legal turn
+     */
+    static List<Move> parseTurn(Board board, String turn) {
+        return parseTurn(board, turn, new long[Board.MAX_TURNS]);
+    }
+
+    /**
+     * Helper method for parseTurn() that uses the given buffer for
+     * the legal turns
+     * @param board the board to play on, at the start of a turn
+     * @param turn the turn in PDN notation
+     * @param turns buffer for the legal turns, MAX_TURNS long
+     * @return the moves played, in order
+     * @throws IllegalArgumentException if the turn is not legal,
+     *              or matches more than one legal turn
+     */
+    private static List<Move> parseTurn(Board board, String turn, long[] turns) {
+        String[] words = turn.split("[-x]");
+        if (words.length < 2)
+            throw new IllegalArgumentException("bad move: " + turn);
+        int[] places = new int[words.length];
+        try {
+            for (int i = 0; i < words.length; i++)
+                places[i] = Integer.parseInt(words[i]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad move: " + turn);
+        }
+
+        List<Move> found = null;
+        int count = board.generateTurns(turns, 0);
+        for (int i = 0; i < count; i++) {
+            if (Board.turnStart(turns[i]) + 1 != places[0]
+                    || Board.turnEnd(turns[i]) + 1 != places[places.length - 1])
+                continue;
+            List<Move> path = board.turnPath(turns[i]);
+            if (!passes(path, places))
+                continue;
+            if (found != null)
+                throw new IllegalArgumentException(turn + " is ambiguous");
+            found = path;
+        }
+        if (found == null)
+            throw new IllegalArgumentException(turn + " is not a legal move");
+
+        for (Move m : found)
+            board.move(m);
+        return found;
+    }
+
+    /**
+     * Helper method that checks whether a path lands on the places
+     * between the first and last, in order
+     * @param path the moves of a turn
+     * @param places the places the turn is written with
+     * @return true if every place between the first and last is
+     *              landed on in order
+     */
+    private static boolean passes(List<Move> path, int[] places) {
+        int next = 1;
+        for (int i = 0; i < path.size() - 1 && next < places.length - 1; i++) {
+            if (path.get(i).getEnd() == places[next])
+                next++;
+        }
+        return next == places.length - 1;
+    }
+
+    /**
+     * Helper method that parses the inside of a tag pair, such as
+     * FEN "B:W21,22:B1,2"
+     * @param tag the text between the brackets
+     * @return the name and value, null if tag is not a tag pair
+     */
+    private static String[] parseTag(String tag) {
+        tag = tag.trim();
+        int space = tag.indexOf(' ');
+        if (space < 0 || !tag.endsWith("\""))
+            return null;
+        String value = tag.substring(space).trim();
+        if (value.length() < 2 || value.charAt(0) != '"')
+            return null;
+        value = value.substring(1, value.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+        return new String[] {tag.substring(0, space), value};
+    }
+
+    /**
+     * Helper method that skips white space
+     * @return the first character after it, -1 at the end of the
+     *              stream
+     * @throws IOException if the stream can't be read
+     */
+    private int skipSpace() throws IOException {
+        int c;
+        while ((c = in.read()) >= 0 && Character.isWhitespace(c)) {
+            if (c == '\n')
+                line++;
+        }
+        return c;
+    }
+
+    /**
+     * Helper method that reads up to and past a character
+     * @param end the character to stop at
+     * @return the text before it
+     * @throws IOException if the stream can't be read
+     */
+    private String readUntil(char end) throws IOException {
+        StringBuilder result = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != end) {
+            if (c == '\n')
+                line++;
+            result.append((char) c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Helper method that reads a word of move text, up to white
+     * space or a delimiter, which is left to be read
+     * @return the word
+     * @throws IOException if the stream can't be read
+     */
+    private String readWord() throws IOException {
+        StringBuilder result = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && !Character.isWhitespace(c) && DELIMITERS.indexOf(c) < 0)
+            result.append((char) c);
+        if (c >= 0)
+            in.unread(c);
+        return result.toString();
+    }
+
+    /**
+     * Helper method that skips a variation, whose opening bracket
+     * has been read, with any variations and comments inside it
+     * @throws IOException if the stream can't be read
+     */
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        int c;
+        while (depth > 0 && (c = in.read()) >= 0) {
+            if (c == '\n')
+                line++;
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (c == '{')
+                readUntil('}');
+        }
+    }
+
+    /**
+     * Closes the stream
+     * @throws IOException if the stream can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes game records in Portable Draughts Notation to a stream, one
+ * at a time, as read by PdnReader. Every landing place of a
+ * multi-jump is written, so the moves never need a board to be read
+ * back, and move text is wrapped into lines of at most LINE_LENGTH
+ * characters, except for long comments.
+ */
+final class PdnWriter implements Closeable, Flushable {
+    /**
+     * Length move text is wrapped at
+     */
+    static final int LINE_LENGTH = 79;
+
+    // where records are written
+    private final Writer out;
+
+    /**
+     * Creates a writer of records to a stream
+     * @param out the stream to write to
+     */
+    PdnWriter(Writer out) {
+        this.out = new BufferedWriter(out);
+    }
+
+    /**
+     * Writes a game, its tags and then its move text, followed by
+     * a blank line
+     * @param game the game to write
+     * @throws IOException if the stream can't be written
+     * @throws IllegalArgumentException if the FEN tag of the game
+     *              is not a legal position
+     */
+    void write(PdnGame game) throws IOException {
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            String value = tag.getValue().replace("\\", "\\\\").replace("\"", "\\\"");
+            out.write("[" + tag.getKey() + " \"" + value + "\"]\n");
+        }
+
+        StringBuilder text = new StringBuilder();
+        int length = 0;
+        Color turn = game.getStart().getTurn();
+        int number = 1;
+        for (int i = 0; i < game.size(); i++) {
+            // a move number is kept on the line of its move
+            String move = format(game.getTurn(i));
+            if (turn == Color.BLACK)
+                move = number + ". " + move;
+            else if (i == 0)
+                move = number + "... " + move;
+            length = append(text, length, move);
+            if (game.getComment(i) != null)
+                length = append(text, length, "{" + game.getComment(i).replace("}", ")") + "}");
+            if (turn == Color.RED)
+                number++;
+            turn = (turn == Color.BLACK) ? Color.RED : Color.BLACK;
+        }
+        append(text, length, game.getResult());
+        out.write(text.append("\n\n").toString());
+    }
+
+    /**
+     * Formats a turn, the moves of one player's turn, in PDN notation
+     * @param moves the moves of the turn, in order
+     * @return the turn, such as 9-14 or 9x18x27
+     */
+    static String format(List<Move> moves) {
+        StringBuilder result = new StringBuilder().append(moves.get(0).getStart());
+        for (Move m : moves)
+            result.append(m.isJump() ? 'x' : '-').append(m.getEnd());
+        return result.toString();
+    }
+
+    /**
+     * Helper method that adds a word to move text, starting a new
+     * line if it does not fit on the current one
+     * @param text the move text
+     * @param length the length of the current line
+     * @param word the word to add
+     * @return the length of the current line after the word
+     */
+    private static int append(StringBuilder text, int length, String word) {
+        if (length > 0 && length + 1 + word.length() > LINE_LENGTH) {
+            text.append('\n');
+            length = 0;
+        } else if (length > 0) {
+            text.append(' ');
+            length++;
+        }
+        text.append(word);
+        return length + word.length();
+    }
+
+    /**
+     * Writes out what has been buffered
+     * @throws IOException if the stream can't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes out what has been buffered, and closes the stream
+     * @throws IOException if the stream can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
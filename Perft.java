@@ -0,0 +1,188 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Counts the positions move generation reaches at a given depth from
+ * a position (perft), to check Board's move generation against known
+ * counts and to measure its raw speed. Every move made by Board.move()
+ * is a ply, so each jump of a multi-jump is its own ply. The count
+ * is divided by root move, the root moves are counted on all cores,
+ * and counts of subtrees can be cached by Zobrist key so that
+ * transpositions are only counted once.
+ */
+public class Perft {
+    // default depth to count to
+    private static final int DEPTH = 8;
+    // default memory budget of the cache of subtree counts
+    private static final int CACHE_MEGABYTES = 16;
+
+    // cache of subtree counts, pairs of (key ^ count, count) where
+    // the key is mixed with the depth, null if there is no cache
+    private final long[] cache;
+    // number of entries in the cache - 1
+    private final int mask;
+
+    /**
+     * Counts the positions at a depth, printing the count under
+     * each root move, the total and the speed
+     * @param args optional, args[0] is the depth (default 8),
+     *              args[1] the position in FEN notation, or
+     *              "start" for the start of the game (default),
+     *              args[2] the number of threads (default the
+     *              number of processors) and args[3] the memory
+     *              budget of the cache in megabytes, 0 for no
+     *              cache (default 16)
+     * @throws InterruptedException if interrupted while counting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : DEPTH;
+        Board board = (args.length > 1 && !args[1].equals("start")) ? Board.fromFen(args[1]) : new Board();
+        int threads = (args.length > 2) ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        int megabytes = (args.length > 3) ? Integer.parseInt(args[3]) : CACHE_MEGABYTES;
+
+        System.out.println(board.toFen() + ", depth " + depth);
+        long start = System.nanoTime();
+        Map<Move, Long> divide = new Perft(megabytes).divide(board, depth, threads);
+        long elapsed = System.nanoTime() - start;
+
+        long total = 0;
+        for (Map.Entry<Move, Long> entry : divide.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+            total += entry.getValue();
+        }
+        System.out.println();
+        System.out.println("Moves: " + divide.size());
+        System.out.println("Nodes: " + total);
+        System.out.printf("Time: %d ms, %.0f nodes/s%n", elapsed / 1000000, total * 1e9 / Math.max(elapsed, 1));
+    }
+
+    /**
+     * Creates a counter with a cache of the given size
+     * @param megabytes the memory budget of the cache, 0 for
+     *              no cache
+     * @throws IllegalArgumentException if megabytes is negative
+     *              or more than 1024
+     */
+    Perft(int megabytes) {
+        if (megabytes < 0 || megabytes > 1024)
+            throw new IllegalArgumentException("cache size must be 0 - 1024 megabytes, was " + megabytes);
+
+        if (megabytes == 0) {
+            this.cache = null;
+            this.mask = 0;
+        } else {
+            int entries = Integer.highestOneBit((megabytes << 20) / (2 * Long.BYTES));
+            this.cache = new long[2 * entries];
+            this.mask = entries - 1;
+        }
+    }
+
+    /**
+     * Counts the positions at a depth under each legal move
+     * @param board the position to count from, which is not changed
+     * @param depth the depth to count to, at least 1
+     * @param threads the number of root moves counted at once
+     * @return the number of positions under each root move, in
+     *              the order of the moves' names
+     * @throws IllegalArgumentException if depth is less than 1
+     * @throws InterruptedException if interrupted while counting
+     */
+    Map<Move, Long> divide(Board board, int depth, int threads) throws InterruptedException {
+        if (depth < 1)
+            throw new IllegalArgumentException("depth must be at least 1, was " + depth);
+
+        int[] moves = new int[Board.MAX_MOVES];
+        int count = board.generateMoves(moves, 0);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Map<Move, Future<Long>> counts = new TreeMap<>(Comparator.comparing(Move::toString));
+        try {
+            for (int i = 0; i < count; i++) {
+                int m = moves[i];
+                counts.put(Board.toMove(m), pool.submit(() -> {
+                    Board position = new Board(board);
+                    position.makeMove(m);
+                    return perft(position, depth - 1, new int[depth][Board.MAX_MOVES]);
+                }));
+            }
+
+            Map<Move, Long> result = new LinkedHashMap<>();
+            for (Map.Entry<Move, Future<Long>> entry : counts.entrySet())
+                result.put(entry.getKey(), get(entry.getValue()));
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the positions at a depth below a position
+     * @param board the position to count from
+     * @param depth the depth to count to
+     * @return the number of positions
+     */
+    long perft(Board board, int depth) {
+        return perft(board, depth, new int[depth + 1][Board.MAX_MOVES]);
+    }
+
+    /**
+     * Helper method that counts the positions at a depth below a
+     * position, the moves of the last ply are counted instead of
+     * being made
+     * @param board the position to count from, made moves are
+     *              taken back before returning
+     * @param depth the depth to count to
+     * @param moves buffers for the packed moves at each depth
+     * @return the number of positions
+     */
+    private long perft(Board board, int depth, int[][] moves) {
+        if (depth == 0)
+            return 1;
+
+        int count = board.generateMoves(moves[depth - 1], 0);
+        if (depth == 1)
+            return count;
+
+        long key = board.getKey() ^ (depth * 0x9E3779B97F4A7C15L);
+        int slot = 0;
+        if (cache != null) {
+            slot = 2 * ((int) (key ^ (key >>> 32)) & mask);
+            long nodes = cache[slot + 1];
+            if ((cache[slot] ^ nodes) == key)
+                return nodes;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            int m = moves[depth - 1][i];
+            long undo = board.makeMove(m);
+            nodes += perft(board, depth - 1, moves);
+            board.unmakeMove(m, undo);
+        }
+
+        // stored with the key xored with the count, so an entry torn
+        // by two threads writing at once doesn't match its key
+        if (cache != null) {
+            cache[slot] = key ^ nodes;
+            cache[slot + 1] = nodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Helper method that waits for a count
+     * @param f the count
+     * @return the result of the count
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static long get(Future<Long> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
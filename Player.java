@@ -7,4 +7,20 @@ public interface Player {
      * @return a legal Move
      */
     public Move getMove();
+
+    /**
+     * Forgets what the player kept from earlier moves, so that it
+     * plays the next game as a new player would. Players that keep
+     * nothing between moves have nothing to forget
+     */
+    public default void newGame() {
+    }
+
+    /**
+     * Stops anything the player keeps running between moves, to be
+     * called once the player is no longer needed. Players that run
+     * nothing between moves have nothing to stop
+     */
+    public default void close() {
+    }
 }
@@ -1,23 +1,134 @@
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implementation of Player that uses alpha-beta
  * pruning to make decisions. This has an advantage
  * over simple minimax implementations, as it can search much
- * deeper in the same amount of time.
+ * deeper in the same amount of time. Results are kept in a
+ * transposition table so that positions reached through
+ * different move orders are only searched once. The tree is
+ * searched one ply deeper at a time until the depth, time or
+ * node limit is reached, so the time per move can be bounded.
+ * With more than one thread, helper threads search the same
+ * position alongside the main search (Lazy SMP), sharing
+ * what they find through the transposition table. Moves are
+ * tried best first, the move from the transposition table,
+ * then captures of the most valuable pieces, then killer
+ * moves and then other moves by their history of cutoffs.
+ * A whole multi-jump is searched as a single move, so each
+ * ply of the tree is a turn, and once one is chosen its
+ * remaining jumps are played without searching again.
+ * In PVS mode, the default, only the first move at each
+ * node is searched with the full window, the others are
+ * searched with a null window to prove they are no better,
+ * and re-searched if they are. Each iteration after the
+ * first starts with a narrow window around the score of
+ * the last one, widened if the score falls outside it.
+ * In pondering mode, once a move is chosen the opponent's
+ * likely reply is taken from the transposition table, and
+ * the position after it is searched on a background thread,
+ * within the same limits as a move, until the bot is asked for
+ * its next move or closed. If the opponent
+ * played the reply, the search carries on from the deepest
+ * iteration the background search finished.
+ * The results of each search are kept for the next one: if
+ * it is of the same position, it carries on from the deepest
+ * iteration finished, and if both sides played the expected
+ * turns, it starts two plies shallower than the last search
+ * finished, which the transposition table mostly answers,
+ * with the rest of the expected line tried first, and plays
+ * the next turn of the line if it is stopped before then.
+ * Given an endgame tablebase, positions with few enough
+ * pieces are scored from it instead of being searched, and
+ * given an opening book, positions in it are not searched.
  */
-public class PruningBot implements Player {
-    // max depth of the game-tree
+public class PruningBot implements Engine {
+    // default max depth of the game-tree
     // this can be larger than simple minimax implementations
-    private static final int MAX_DEPTH = 10;
+    private static final int MAX_DEPTH = 12;
+    // default memory budget of the transposition table
+    static final int TABLE_MEGABYTES = 32;
+    // number of nodes searched between checks of the limits
+    private static final int CHECK_INTERVAL = 1024;
+    // score of a tablebase win, less the plies left to play, below
+    // the score of a finished game so that faster wins come first
+    private static final int TABLEBASE_WIN = 500000;
+    // half the width of the window around the last iteration's score
+    private static final int ASPIRATION_WINDOW = 50;
 
     // reference to the current board
     private Board board;
-    // map from utility values to legal moves
-    private Map<Integer, List<Move>> map;
+    // the remaining jumps of the last turn chosen, and the key of
+    // the board the first of them is to be played on
+    private List<Move> plan;
+    private long planKey;
     // object to make random decision when multiple
     // moves have the same value
     private Random r;
+    // results of earlier searches, kept between moves and
+    // shared by all threads
+    private TranspositionTable table;
+    // endgame results, null if there is no tablebase
+    private Tablebase tablebase;
+    // moves for early positions, null if there is no book
+    private OpeningBook book;
+    // limits on each search, 0 if there is no time or node limit
+    private int maxDepth;
+    private long timeLimit;
+    private long nodeLimit;
+    // whether to use principal variation search and aspiration windows
+    private boolean pvs;
+    // start time (in nanoseconds) of the current search
+    private long startTime;
+    // nodes searched by all threads, counted every CHECK_INTERVAL nodes
+    private AtomicLong nodes;
+    // set when a limit is hit or the main search is done, every
+    // thread then abandons its current iteration
+    private volatile boolean aborted;
+    // set by stop() from another thread, the search ends as if
+    // it hit a limit, until cleared by clearStop()
+    private volatile boolean stopRequested;
+    // told about each iteration as it finishes, null if no one
+    private Engine.Listener listener;
+    // value of the move returned by the last search
+    private int value;
+    // statistics of the last search, null before the first
+    private SearchStats stats;
+    // the search run on the calling thread, whose result is played
+    private Searcher main;
+    // searches run on the pool alongside it, empty with one thread
+    private Searcher[] helpers;
+    private ExecutorService pool;
+    // whether to search the expected position during the opponent's turn
+    private boolean ponder;
+    // the background search, its thread (null if not pondering), the
+    // key of the position it searches, set to stop it, and the time
+    // (in nanoseconds) it started
+    private Searcher ponderer;
+    private Thread ponderThread;
+    private long ponderKey;
+    private volatile boolean ponderStopped;
+    private long ponderStart;
+    // results of the deepest iteration the background search finished,
+    // ponderDepth is 0 if none
+    private int ponderDepth;
+    private int ponderValue;
+    private List<Long> ponderBest;
+    // key, depth of the deepest iteration finished, value and best
+    // turns of the last search, lastDepth is 0 if there was none
+    private long lastKey;
+    private int lastDepth;
+    private int lastValue;
+    private List<Long> lastBest;
+    // key of the position after the first two turns of the last
+    // search's principal variation, the turns expected after that,
+    // and the depth and value the next search starts from there
+    private long expectedKey;
+    private List<Long> expectedLine;
+    private int expectedDepth;
+    private int expectedValue;
 
     /**
      * Creates a new instance of PruningBot with a reference
@@ -25,86 +136,903 @@ public class PruningBot implements Player {
      * @param board the current state of the board
      */
     public PruningBot(Board board) {
+        this(board, TABLE_MEGABYTES);
+    }
+
+    /**
+     * Creates a new instance of PruningBot with a reference
+     * to the current state of the board, and a transposition
+     * table of the given size
+     * @param board the current state of the board
+     * @param tableMegabytes the memory budget of the
+     *              transposition table, in megabytes
+     * @throws IllegalArgumentException if tableMegabytes is
+     *              less than 1 or more than 1024
+     */
+    public PruningBot(Board board, int tableMegabytes) {
+        this(board, tableMegabytes, 1);
+    }
+
+    /**
+     * Creates a new instance of PruningBot with a reference
+     * to the current state of the board, a transposition
+     * table of the given size, that searches on the given
+     * number of threads
+     * @param board the current state of the board
+     * @param tableMegabytes the memory budget of the
+     *              transposition table, in megabytes
+     * @param threads the number of threads to search on
+     * @throws IllegalArgumentException if tableMegabytes is
+     *              less than 1 or more than 1024, or threads
+     *              is less than 1
+     */
+    public PruningBot(Board board, int tableMegabytes, int threads) {
+        this(board, tableMegabytes, threads, new Random());
+    }
+
+    /**
+     * Creates a new instance of PruningBot with a reference
+     * to the current state of the board, a transposition
+     * table of the given size, that searches on the given
+     * number of threads and decides between equally valued
+     * moves with the given random number generator
+     * @param board the current state of the board
+     * @param tableMegabytes the memory budget of the
+     *              transposition table, in megabytes
+     * @param threads the number of threads to search on
+     * @param r the random number generator to use
+     * @throws IllegalArgumentException if tableMegabytes is
+     *              less than 1 or more than 1024, or threads
+     *              is less than 1
+     */
+    public PruningBot(Board board, int tableMegabytes, int threads, Random r) {
+        if (threads < 1)
+            throw new IllegalArgumentException("need at least one thread, was " + threads);
+
         this.board = board;
-        this.map = new HashMap<>();
-        this.r = new Random();
+        this.plan = new ArrayList<>();
+        this.r = r;
+        this.table = new TranspositionTable(tableMegabytes);
+        this.nodes = new AtomicLong();
+        this.pvs = true;
+        setLimits(MAX_DEPTH, 0, 0);
+
+        this.main = new Searcher(0);
+        this.helpers = new Searcher[threads - 1];
+        for (int i = 0; i < helpers.length; i++)
+            helpers[i] = new Searcher(i + 1);
+        this.ponderer = new Searcher(-1);
+
+        // idle helper threads time out, so a bot that is thrown
+        // away doesn't keep its threads
+        if (threads > 1) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads - 1, threads - 1,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread t = new Thread(task, "PruningBot helper");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            this.pool = executor;
+        }
+    }
+
+    /**
+     * Sets the endgame tablebase positions are looked up in
+     * @param tablebase the tablebase, null for none
+     */
+    void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Sets the opening book moves are looked up in before searching
+     * @param book the opening book, null for none
+     */
+    void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Sets whether to search with principal variation search and
+     * aspiration windows, or with plain alpha-beta
+     * @param pvs true for principal variation search, false for
+     *              plain alpha-beta
+     */
+    void setPvs(boolean pvs) {
+        this.pvs = pvs;
+    }
+
+    /**
+     * Sets whether to search the position after the opponent's
+     * expected reply while waiting for the next call to getMove(),
+     * turning it off stops any background search
+     * @param ponder true to ponder, false not to
+     */
+    void setPonder(boolean ponder) {
+        this.ponder = ponder;
+        if (!ponder)
+            stopPondering();
+    }
+
+    /**
+     * Sets the limits on each search, the search stops at
+     * whichever limit is hit first. The search always
+     * completes a depth of one ply
+     * @param depth the maximum depth of the tree
+     * @param millis the maximum time per move in milliseconds,
+     *              0 for no limit
+     * @param nodes the maximum number of nodes searched per move
+     *              by all threads together, 0 for no limit
+     * @throws IllegalArgumentException if depth is less than 2,
+     *              or millis or nodes is negative
+     */
+    public void setLimits(int depth, long millis, long nodes) {
+        if (depth < 2 || millis < 0 || nodes < 0)
+            throw new IllegalArgumentException("illegal limits: depth = " + depth +
+                    ", millis = " + millis + ", nodes = " + nodes);
+        // the background search was started with the old limits
+        stopPondering();
+        this.maxDepth = depth;
+        this.timeLimit = millis;
+        this.nodeLimit = nodes;
     }
 
     /**
      * Returns a legal move on the current board, as chosen
-     * using the alpha-beta pruning algorithm on a game tree 
-     * of depth MAX_DEPTH. 
+     * using the alpha-beta pruning algorithm on game trees
+     * of increasing depth, from the deepest tree that was
+     * searched completely within the limits, unless the
+     * position is in the opening book or the move is the
+     * next jump of a multi-jump already chosen
      * @return a legal move on the current board
      */
     public Move getMove() {
+        if (!plan.isEmpty() && board.getKey() == planKey && board.getLegalMoves().contains(plan.get(0)))
+            return nextJump();
+        plan.clear();
+        boolean hit = stopPondering();
+
         if (board.getLegalMoves().size() == 1)
             return board.getLegalMoves().iterator().next();
 
-        map.clear();
+        if (book != null) {
+            Move move = book.probe(board, r);
+            if (move != null)
+                return move;
+        }
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
 
-        int v = alphabeta(board, Integer.MIN_VALUE, Integer.MAX_VALUE, MAX_DEPTH);
-       
-        return map.get(v).get(r.nextInt(map.get(v).size()));
+        // the table already holds the background search's results
+        // for this position, keep them from being replaced first
+        if (!hit)
+            table.newSearch();
+        nodes.set(0);
+        startTime = System.nanoTime();
+        aborted = false;
+
+        // start the helpers, each on its own copy of the board
+        List<Future<?>> running = new ArrayList<>();
+        for (Searcher helper : helpers) {
+            helper.reset(board);
+            running.add(pool.submit(helper));
+        }
+
+        main.reset(board);
+        List<Long> best = null;
+        int depth = 2;
+        if (hit) {
+            best = ponderBest;
+            value = ponderValue;
+            depth = ponderDepth + 1;
+        } else if (board.getKey() == lastKey && lastDepth > 0) {
+            best = lastBest;
+            value = lastValue;
+            depth = lastDepth + 1;
+        } else if (board.getKey() == expectedKey && expectedDepth >= 2) {
+            // the next turn of the line is played if even the first
+            // iteration can't finish
+            seedLine();
+            best = Collections.singletonList(expectedLine.get(0));
+            value = expectedValue;
+            depth = expectedDepth;
+        }
+        int finished = depth - 1;
+        try {
+            // each iteration tries the best moves of the last one first,
+            // through the transposition table
+            for (main.rootDepth = depth; main.rootDepth <= main.limit; main.rootDepth++) {
+                long iterationStart = System.nanoTime();
+                long iterationNodes = main.stats.getNodes();
+                int v = main.iterate(value);
+                if (aborted)
+                    break;
+                best = main.map.get(v);
+                value = v;
+                finished = main.rootDepth;
+                iterationNodes = main.stats.getNodes() - iterationNodes;
+                long iterationNanos = System.nanoTime() - iterationStart;
+                main.stats.iteration(main.rootDepth, iterationNodes, iterationNanos);
+                if (listener != null)
+                    listener.iteration(main.rootDepth, iterationNodes, iterationNanos);
+
+                // the next iteration takes longer than all before it,
+                // don't start it if it can't finish
+                if (timeLimit > 0 && elapsedMillis() * 2 > timeLimit)
+                    break;
+            }
+        } finally {
+            // stop the helpers, and wait for them to let go of the table
+            aborted = true;
+            for (Future<?> f : running)
+                Futures.await(f);
+            nodes.addAndGet(main.unchecked);
+            for (Searcher helper : helpers) {
+                nodes.addAndGet(helper.unchecked);
+                main.stats.add(helper.stats);
+            }
+            main.stats.finish(System.nanoTime() - startTime);
+            stats = main.stats;
+        }
+
+        long turn = best.get(r.nextInt(best.size()));
+        remember(best, finished, turn);
+        plan.addAll(board.turnPath(turn));
+        planKey = board.getKey();
+        if (event.shouldCommit()) {
+            event.engine = "pruning";
+            event.position = board.toFen();
+            event.move = plan.get(0).toString();
+            event.value = value;
+            event.depth = (stats.getIterations() > 0)
+                    ? stats.getIterationDepth(stats.getIterations() - 1) : depth - 1;
+            event.nodes = stats.getNodes();
+            event.leaves = stats.getLeaves();
+            event.threads = helpers.length + 1;
+            event.commit();
+        }
+        if (ponder)
+            startPondering(turn);
+        return nextJump();
     }
 
     /**
-     * Helper method for getMove() that builds the game tree
-     * and runs alpha-beta on it to return the optimum utility
-     * value of current moves. Also maps utility values to the
-     * current moves that result in those values.
-     * @param board the current state of the board
-     * @param alpha the minimum bound on utility values to continue
-     *              building tree on
-     * @param beta the maximum bound on utility values to continue
-     *              building tree on
-     * @param depth the maximum depth of the tree to build
-     * @return the utility value of the optimum legal moves on
-     *              board
-     */
-    private int alphabeta(Board board, int alpha, int beta, int depth) {
-        if (depth == 1 || board.gameOver()) // terminal case
-            return board.getScore();
-
-        // black aims to maximize the score of the board
-        boolean max = (board.getTurn() == Color.BLACK);
-       
-        // best is meant to be overriden
-        int best;
-        if (max)
-            best = Integer.MIN_VALUE;
-        else
-            best = Integer.MAX_VALUE;
-
-        // set best to be the optimum utlity value of child game states
-        for (Move m : board.getLegalMoves()) {
-            // recursivly find utility values of child states
-            Board next = new Board(board, m);
-            int v = alphabeta(next, alpha, beta, depth - 1);
-
-            // fill map for the original passed board
-            if (depth == MAX_DEPTH) {
-                if (!map.containsKey(v))
-                    map.put(v, new ArrayList<>());
-                map.get(v).add(m);
+     * Helper method that keeps the results of the search just done
+     * for the next one, and works out the position it expects to
+     * be asked about next from the principal variation, as found
+     * in the transposition table
+     * @param best the best turns found
+     * @param depth the depth of the deepest iteration finished
+     * @param turn the turn chosen
+     */
+    private void remember(List<Long> best, int depth, long turn) {
+        lastKey = board.getKey();
+        lastDepth = depth;
+        lastValue = value;
+        lastBest = new ArrayList<>(best);
+
+        List<Long> line = principalVariation(turn, depth);
+        expectedDepth = (line.size() > 2) ? depth - 2 : 0;
+        if (expectedDepth < 2)
+            return;
+        Board next = new Board(board);
+        next.makeTurn(line.get(0));
+        next.makeTurn(line.get(1));
+        expectedKey = next.getKey();
+        expectedLine = new ArrayList<>(line.subList(2, line.size()));
+        expectedValue = value;
+    }
+
+    /**
+     * Helper method that follows the best turns stored in the
+     * transposition table from the current position
+     * @param turn the packed turn chosen at the current position
+     * @param length the most turns to follow
+     * @return the packed turns of the line, turn first
+     */
+    private List<Long> principalVariation(long turn, int length) {
+        List<Long> line = new ArrayList<>();
+        long[] turns = new long[Board.MAX_TURNS];
+        Board position = new Board(board);
+        while (turn != 0 && line.size() < length) {
+            line.add(turn);
+            position.makeTurn(turn);
+            long entry = table.probe(position.getKey());
+            turn = 0;
+            if (entry == 0 || position.gameOver())
+                break;
+            int count = position.generateTurns(turns, 0);
+            for (int i = 0; i < count && turn == 0; i++) {
+                if (Board.turnId(turns[i]) == TranspositionTable.move(entry))
+                    turn = turns[i];
             }
+        }
+        return line;
+    }
 
-            if (max) {
-                best = Math.max(best, v);
-                
-                if ((next.getTurn() != board.getTurn()) && v >= beta)
-                    return Integer.MAX_VALUE;
-                alpha = Math.max(alpha, v);
+    /**
+     * Helper method that makes sure the rest of the expected line
+     * is tried first, by storing its turns in the transposition
+     * table where they have been replaced. They are stored with
+     * no depth, so only their turns are used
+     */
+    private void seedLine() {
+        Board position = new Board(board);
+        for (long turn : expectedLine) {
+            if (table.probe(position.getKey()) == 0)
+                table.store(position.getKey(), 0, TranspositionTable.LOWER,
+                        Integer.MIN_VALUE, Board.turnId(turn));
+            position.makeTurn(turn);
+        }
+    }
+
+    /**
+     * Helper method that starts searching the position after the
+     * given turn and the opponent's best reply to it, as found in
+     * the transposition table, on a background thread. Nothing is
+     * searched if no reply is known or the game would be over
+     * @param turn the packed turn about to be played
+     */
+    private void startPondering(long turn) {
+        Board next = new Board(board);
+        next.makeTurn(turn);
+        long entry = table.probe(next.getKey());
+        if (entry == 0 || next.gameOver())
+            return;
+
+        long[] turns = new long[Board.MAX_TURNS];
+        int count = next.generateTurns(turns, 0);
+        long reply = 0;
+        for (int i = 0; i < count && reply == 0; i++) {
+            if (Board.turnId(turns[i]) == TranspositionTable.move(entry))
+                reply = turns[i];
+        }
+        if (reply == 0)
+            return;
+        next.makeTurn(reply);
+        if (next.gameOver() || next.getLegalMoves().size() == 1)
+            return;
+
+        table.newSearch();
+        ponderer.reset(next);
+        ponderKey = next.getKey();
+        ponderDepth = 0;
+        ponderStopped = false;
+        ponderStart = System.nanoTime();
+        ponderThread = new Thread(ponderer::ponder, "PruningBot ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
 
-            } else {
-                best = Math.min(best, v);
-                
-                if ((next.getTurn() != board.getTurn()) && v <= alpha)
-                    return Integer.MIN_VALUE;
-                beta = Math.min(beta, v);
+    /**
+     * Helper method that stops the background search, if there is
+     * one, and waits for it to let go of the table
+     * @return true if it searched the current position and finished
+     *              at least one iteration, false otherwise
+     */
+    private boolean stopPondering() {
+        if (ponderThread == null)
+            return false;
+
+        ponderStopped = true;
+        boolean interrupted = false;
+        while (ponderThread.isAlive()) {
+            try {
+                ponderThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        ponderThread = null;
+        return board.getKey() == ponderKey && ponderDepth > 0;
+    }
 
-        return best;
-   }
-}
+    /**
+     * Stops the background search, if there is one, and forgets the
+     * results of earlier searches and the history of cutoffs
+     */
+    @Override
+    public void newGame() {
+        stopPondering();
+        table.clear();
+        plan.clear();
+        lastDepth = 0;
+        expectedDepth = 0;
+        ponderDepth = 0;
+        value = 0;
+        stats = null;
+        main.clearHistory();
+        for (Searcher helper : helpers)
+            helper.clearHistory();
+        ponderer.clearHistory();
+    }
+
+    /**
+     * Stops the background search, if there is one, so that a bot
+     * that is thrown away doesn't keep a thread searching. The bot
+     * can still be asked for moves, and ponders again after them
+     */
+    @Override
+    public void close() {
+        stopPondering();
+    }
+
+    /**
+     * Helper method that takes the next move of the chosen turn,
+     * and works out the key of the board the one after it is
+     * to be played on
+     * @return the next move of the chosen turn
+     */
+    private Move nextJump() {
+        Move move = plan.remove(0);
+        if (!plan.isEmpty()) {
+            Board next = new Board(board);
+            next.move(move);
+            planKey = next.getKey();
+        }
+        return move;
+    }
 
+    /**
+     * Sets who is told about each iteration of later searches
+     * @param listener the listener, null for none
+     */
+    public void setListener(Engine.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Asks the current or next call to getMove(), running on another
+     * thread, to stop searching and return the best move of the
+     * deepest iteration finished so far, as if it hit a limit. The
+     * stop holds until clearStop() is called, so it is not lost if
+     * it comes before the search has started
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets any earlier call to stop(), to be called before asking
+     * for a move that may be stopped
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Returns the value of the move returned by the last call to
+     * getMove() that searched, positive is good for black
+     * @return the value of the last move searched for
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the statistics of the last call to getMove() that
+     * searched, counted by all threads
+     * @return the statistics of the last search, null if there
+     *              has been none
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the number of nodes searched by all threads during
+     * the last call to getMove() that searched
+     * @return the number of nodes searched
+     */
+    long getNodes() {
+        return nodes.get();
+    }
+
+    /**
+     * Helper method that returns the time since the current
+     * search started
+     * @return the time since the search started, in milliseconds
+     */
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * The state of one thread's search, each thread walks its own
+     * copy of the board with its own move buffers
+     */
+    private class Searcher implements Runnable {
+        // the board being searched, modified and restored in place
+        Board position;
+        // depth of the current iteration, the root of the tree
+        int rootDepth;
+        // max depth of the current search, the buffers are sized for
+        // it, so limits set while it runs don't change it
+        int limit;
+        // map from utility values to legal turns at the root, packed,
+        // filled by the main and background searches
+        Map<Integer, List<Long>> map;
+        // the order turns are tried in, with the buffers they are kept in
+        private final MoveOrdering ordering;
+        // buffers for the packed capture turns at each ply past the end of the tree
+        private long[][] jumps;
+        // nodes searched since the last check of the limits
+        private int unchecked;
+        // statistics of this thread's current search
+        SearchStats stats;
+        // 0 for the main search, whose root moves are mapped, -1 for
+        // the background search, the helper number otherwise
+        private final int id;
+        private final boolean isMain;
+        private final boolean ponders;
+        // used by helpers to search root moves in a different order
+        private final Random shuffle;
+
+        /**
+         * Creates a new Searcher
+         * @param id 0 for the main search, -1 for the background
+         *              search, the helper number otherwise
+         */
+        Searcher(int id) {
+            this.id = id;
+            this.isMain = (id == 0);
+            this.ponders = (id < 0);
+            this.map = new HashMap<>();
+            this.shuffle = new Random(id);
+            this.ordering = new MoveOrdering();
+            this.jumps = new long[Board.MAX_PIECES][Board.MAX_TURNS];
+        }
+
+        /**
+         * Prepares to search a copy of the given board
+         * @param board the board to be searched
+         */
+        void reset(Board board) {
+            this.position = new Board(board);
+            this.unchecked = 0;
+            this.stats = new SearchStats(true);
+            this.limit = maxDepth;
+            ordering.newSearch(limit);
+        }
+
+        /**
+         * Forgets every history score, for a new game
+         */
+        void clearHistory() {
+            ordering.clearHistory();
+        }
+
+        /**
+         * Runs one iteration of the search from the root, to
+         * rootDepth. In PVS mode, after the first iteration, the
+         * window starts around the score of the last one
+         * @param guess the score of the last iteration
+         * @return the utility value of the root, meaningless if
+         *              the search was stopped
+         */
+        int iterate(int guess) {
+            int alpha = Integer.MIN_VALUE;
+            int beta = Integer.MAX_VALUE;
+            if (pvs && rootDepth > 2 && Math.abs(guess) < TABLEBASE_WIN) {
+                alpha = guess - ASPIRATION_WINDOW;
+                beta = guess + ASPIRATION_WINDOW;
+            }
+
+            // a score on or outside the window is only a bound,
+            // search again with that side of the window open
+            while (true) {
+                map.clear();
+                int v = alphabeta(position, alpha, beta, rootDepth);
+                if (halted())
+                    return v;
+                if (v <= alpha && alpha != Integer.MIN_VALUE)
+                    alpha = Integer.MIN_VALUE;
+                else if (v >= beta && beta != Integer.MAX_VALUE)
+                    beta = Integer.MAX_VALUE;
+                else
+                    return v;
+            }
+        }
+
+        /**
+         * Runs the background search, deepening until stopped or
+         * the max depth it was started with is searched, and keeps
+         * the results of each iteration it finishes
+         */
+        void ponder() {
+            int guess = 0;
+            for (rootDepth = 2; rootDepth <= limit; rootDepth++) {
+                guess = iterate(guess);
+                if (halted())
+                    return;
+                ponderBest = new ArrayList<>(map.get(guess));
+                ponderValue = guess;
+                ponderDepth = rootDepth;
+            }
+        }
+
+        /**
+         * Helper method that returns whether this search has to
+         * stop, the background search is stopped on its own
+         * @return true if the current iteration has to be abandoned
+         */
+        private boolean halted() {
+            return ponders ? ponderStopped : aborted;
+        }
+
+        /**
+         * Runs a helper search, deepening until the main search
+         * is done. Odd helpers start a ply deeper, so the threads
+         * spread over two depths at once
+         */
+        public void run() {
+            for (rootDepth = 2 + id % 2; rootDepth <= limit; rootDepth++) {
+                alphabeta(position, Integer.MIN_VALUE, Integer.MAX_VALUE, rootDepth);
+                if (aborted)
+                    return;
+            }
+        }
+
+        /**
+         * Helper method that counts a node and checks whether the
+         * search has hit one of its limits, the first iteration of
+         * the main search is always allowed to finish. The background
+         * search has the same time and node limits as the main
+         * search, counted from when it started
+         * @return true if the current iteration has to be abandoned
+         */
+        private boolean outOfBudget() {
+            stats.node();
+            if (ponders) {
+                if (++unchecked == CHECK_INTERVAL) {
+                    unchecked = 0;
+                    if ((nodeLimit > 0 && stats.getNodes() >= nodeLimit)
+                            || (timeLimit > 0 && (System.nanoTime() - ponderStart) / 1000000 >= timeLimit))
+                        ponderStopped = true;
+                }
+                return ponderStopped;
+            }
+            if (++unchecked == CHECK_INTERVAL) {
+                unchecked = 0;
+                long total = nodes.addAndGet(CHECK_INTERVAL);
+                if (isMain && rootDepth > 2) {
+                    if (stopRequested || (nodeLimit > 0 && total >= nodeLimit)
+                            || (timeLimit > 0 && elapsedMillis() >= timeLimit))
+                        aborted = true;
+                }
+            }
+            return aborted;
+        }
+
+        /**
+         * Helper method for getMove() that builds the game tree
+         * and runs alpha-beta on it to return the optimum utility
+         * value of current moves. The main searcher also maps utility
+         * values to the current turns that result in those values.
+         * @param board the current state of the board, moves
+         *              are made and taken back on it in place
+         * @param alpha the minimum bound on utility values to continue
+         *              building tree on
+         * @param beta the maximum bound on utility values to continue
+         *              building tree on
+         * @param depth the maximum depth of the tree to build
+         * @return the utility value of the optimum legal moves on
+         *              board, meaningless if the search was aborted
+         */
+        private int alphabeta(Board board, int alpha, int beta, int depth) {
+            if (outOfBudget())
+                return 0;
+
+            if (board.gameOver()) { // terminal case
+                stats.leaf();
+                return board.getScore();
+            }
+
+            // black aims to maximize the score of the board
+            boolean max = (board.getTurn() == Color.BLACK);
+
+            // the result of endgames is known, except at the root
+            // where every move needs a value
+            if (tablebase != null && depth != rootDepth) {
+                int result = tablebase.probe(board);
+                if (result == Tablebase.DRAW)
+                    return 0;
+                if (result == Tablebase.WIN || result == Tablebase.LOSS) {
+                    int score = TABLEBASE_WIN - tablebase.probeDistance(board);
+                    return (max == (result == Tablebase.WIN)) ? score : -score;
+                }
+            }
+
+            if (depth == 1)
+                return quiesce(board, alpha, beta, 0);
+
+            // use what is known about this position from earlier,
+            // except at the root where every move needs a value
+            long key = board.getKey();
+            long entry = table.probe(key);
+            stats.probe(entry != 0);
+            if (entry != 0 && depth != rootDepth && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+
+                if (bound == TranspositionTable.EXACT)
+                    return score;
+                if (bound == TranspositionTable.LOWER && score >= beta)
+                    return max ? Integer.MAX_VALUE : score;
+                if (bound == TranspositionTable.UPPER && score <= alpha)
+                    return max ? score : Integer.MIN_VALUE;
+            }
+
+            // best is meant to be overriden
+            int best;
+            if (max)
+                best = Integer.MIN_VALUE;
+            else
+                best = Integer.MAX_VALUE;
+            long bestMove = 0;
+            int alphaOrig = alpha;
+            int betaOrig = beta;
+
+            // helpers try root moves in their own order
+            boolean shuffled = (!isMain && !ponders && depth == rootDepth);
+            int count = ordering.generate(board, depth, rootDepth - depth,
+                    TranspositionTable.move(entry), shuffled ? shuffle : null);
+
+            // set best to be the optimum utlity value of child game states
+            for (int i = 0; i < count; i++) {
+                long m = ordering.nextMove(depth, i, count);
+
+                // recursivly find utility values of child states
+                long undo = board.makeTurn(m);
+                int v = search(board, alpha, beta, depth - 1, i == 0, max);
+                board.unmakeTurn(m, undo);
+                if (halted())
+                    return 0;
+
+                // fill map for the original passed board
+                if ((isMain || ponders) && depth == rootDepth) {
+                    if (!map.containsKey(v))
+                        map.put(v, new ArrayList<>());
+                    map.get(v).add(m);
+                }
+
+                if (max) {
+                    if (v > best || bestMove == 0) {
+                        best = v;
+                        bestMove = m;
+                    }
+
+                    if (v >= beta) {
+                        ordering.recordCutoff(board, depth, rootDepth - depth, m);
+                        stats.cutoff(i);
+                        table.store(key, depth, TranspositionTable.LOWER, beta, Board.turnId(m));
+                        return Integer.MAX_VALUE;
+                    }
+                    alpha = Math.max(alpha, v);
+
+                } else {
+                    if (v < best || bestMove == 0) {
+                        best = v;
+                        bestMove = m;
+                    }
+
+                    if (v <= alpha) {
+                        ordering.recordCutoff(board, depth, rootDepth - depth, m);
+                        stats.cutoff(i);
+                        table.store(key, depth, TranspositionTable.UPPER, alpha, Board.turnId(m));
+                        return Integer.MIN_VALUE;
+                    }
+                    beta = Math.min(beta, v);
+                }
+            }
+
+            // only values strictly inside the window are exact
+            if (best >= betaOrig)
+                table.store(key, depth, TranspositionTable.LOWER, betaOrig, Board.turnId(bestMove));
+            else if (best <= alphaOrig)
+                table.store(key, depth, TranspositionTable.UPPER, alphaOrig, Board.turnId(bestMove));
+            else
+                table.store(key, depth, TranspositionTable.EXACT, best, Board.turnId(bestMove));
+
+            return best;
+        }
+
+        /**
+         * Helper method for alphabeta() that searches a child
+         * position. In PVS mode, every child but the first is
+         * searched with a null window next to the bound the side
+         * to move has to beat, and only searched with the full
+         * window if it turns out to beat it
+         * @param board the child position
+         * @param alpha the minimum bound on utility values
+         * @param beta the maximum bound on utility values
+         * @param depth the maximum depth of the tree to build
+         * @param first whether this is the first child searched
+         * @param max whether the side to move at the parent
+         *              maximizes the score
+         * @return the utility value of the child, as by alphabeta()
+         */
+        private int search(Board board, int alpha, int beta, int depth, boolean first, boolean max) {
+            if (!pvs || first || alpha + 1 >= beta)
+                return alphabeta(board, alpha, beta, depth);
+
+            // cutoffs return sentinels, so a value outside the null
+            // window only says which side of it the child is on
+            if (max) {
+                int v = alphabeta(board, alpha, alpha + 1, depth);
+                if (v > alpha && !halted())
+                    v = alphabeta(board, alpha, beta, depth);
+                return v;
+            }
+            int v = alphabeta(board, beta - 1, beta, depth);
+            if (v < beta && !halted())
+                v = alphabeta(board, alpha, beta, depth);
+            return v;
+        }
+
+        /**
+         * Helper method for alphabeta() that values a position at
+         * the end of the tree. Jumps are mandatory, so while one is
+         * pending the position is searched further, over whole
+         * multi-jumps only, and is only scored once it is quiet
+         * @param board the current state of the board, moves
+         *              are made and taken back on it in place
+         * @param alpha the minimum bound on utility values to continue
+         *              building tree on
+         * @param beta the maximum bound on utility values to continue
+         *              building tree on
+         * @param ply the number of turns made past the end of the tree
+         * @return the utility value of the best sequence of jumps,
+         *              meaningless if the search was aborted
+         */
+        private int quiesce(Board board, int alpha, int beta, int ply) {
+            if (outOfBudget())
+                return 0;
+
+            if (!board.hasJumps()) {
+                stats.leaf();
+                return board.getScore();
+            }
+
+            boolean max = (board.getTurn() == Color.BLACK);
+            int best;
+            if (max)
+                best = Integer.MIN_VALUE;
+            else
+                best = Integer.MAX_VALUE;
+
+            int count = board.generateTurns(jumps[ply], 0);
+            for (int i = 0; i < count; i++) {
+                long m = jumps[ply][i];
+
+                long undo = board.makeTurn(m);
+                int v = quiesce(board, alpha, beta, ply + 1);
+                board.unmakeTurn(m, undo);
+                if (halted())
+                    return 0;
+
+                if (max) {
+                    best = Math.max(best, v);
+                    if (v >= beta) {
+                        stats.cutoff(i);
+                        return Integer.MAX_VALUE;
+                    }
+                    alpha = Math.max(alpha, v);
+                } else {
+                    best = Math.min(best, v);
+                    if (v <= alpha) {
+                        stats.cutoff(i);
+                        return Integer.MIN_VALUE;
+                    }
+                    beta = Math.min(beta, v);
+                }
+            }
+
+            return best;
+        }
+    }
+}
@@ -16,8 +16,19 @@ public class RandomBot implements Player {
      * @param board the board being played on
      */
     public RandomBot(Board board) {
+        this(board, new Random());
+    }
+
+    /**
+     * Creates a new RandomBot with a reference
+     * to the board being played on, that picks moves
+     * with the given random number generator
+     * @param board the board being played on
+     * @param r the random number generator to use
+     */
+    public RandomBot(Board board, Random r) {
         this.board = board;
-        this.r = new Random();
+        this.r = r;
     }
 
     /**
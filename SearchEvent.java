@@ -0,0 +1,42 @@
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event for one search by a bot, from the call to
+ * getMove() that started it to the move it chose. Only committed
+ * when a recording has the event enabled, so it costs next to
+ * nothing otherwise.
+ */
+@Name("checkers.Search")
+@Label("Search")
+@Category("Checkers")
+@Description("A search for a move by a bot")
+@StackTrace(false)
+final class SearchEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Position")
+    @Description("The position searched, in FEN notation")
+    String position;
+
+    @Label("Move")
+    String move;
+
+    @Label("Value")
+    @Description("The value of the move, positive is good for black")
+    int value;
+
+    @Label("Depth")
+    @Description("The depth of the deepest finished iteration")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaves")
+    @Description("Positions evaluated")
+    long leaves;
+
+    @Label("Threads")
+    int threads;
+}
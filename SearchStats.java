@@ -0,0 +1,240 @@
+import java.util.*;
+
+/**
+ * Statistics of one search by a bot: how many nodes it visited and
+ * how many of them it evaluated, at which move cutoffs happened, how
+ * often the transposition table knew a position, and how many nodes
+ * and how much time each iteration of iterative deepening took. Each
+ * thread counts into its own instance, which are added together when
+ * the search is done, so counting needs no synchronization.
+ */
+final class SearchStats {
+    /**
+     * Number of move indexes cutoffs are counted for, cutoffs at
+     * later moves are counted at the last index
+     */
+    static final int CUTOFF_INDEXES = 16;
+
+    // nodes visited and positions evaluated
+    private long nodes;
+    private long leaves;
+    // cutoffs by the index of the move that caused them
+    private final long[] cutoffs;
+    // probes of the transposition table, and how many found an entry,
+    // probes is -1 if the search has no table
+    private long probes;
+    private long hits;
+    // depth, nodes and nanoseconds of each finished iteration
+    private final List<long[]> iterations;
+    // nanoseconds the whole search took
+    private long nanos;
+
+    /**
+     * Creates empty statistics
+     * @param hasTable whether the search probes a transposition table
+     */
+    SearchStats(boolean hasTable) {
+        this.cutoffs = new long[CUTOFF_INDEXES];
+        this.probes = hasTable ? 0 : -1;
+        this.iterations = new ArrayList<>();
+    }
+
+    /**
+     * Counts a node visited
+     */
+    void node() {
+        nodes++;
+    }
+
+    /**
+     * Counts nodes visited all at once, for searches that count
+     * them on their own
+     * @param count the number of nodes
+     */
+    void addNodes(long count) {
+        nodes += count;
+    }
+
+    /**
+     * Counts a position evaluated
+     */
+    void leaf() {
+        leaves++;
+    }
+
+    /**
+     * Counts a cutoff
+     * @param index the index of the move that caused it, 0 for the
+     *              first move tried
+     */
+    void cutoff(int index) {
+        cutoffs[Math.min(index, CUTOFF_INDEXES - 1)]++;
+    }
+
+    /**
+     * Counts a probe of the transposition table
+     * @param hit whether the probe found an entry
+     */
+    void probe(boolean hit) {
+        probes++;
+        if (hit)
+            hits++;
+    }
+
+    /**
+     * Records a finished iteration
+     * @param depth the depth of the iteration
+     * @param nodes the nodes visited by the iteration
+     * @param nanos the time the iteration took, in nanoseconds
+     */
+    void iteration(int depth, long nodes, long nanos) {
+        iterations.add(new long[] {depth, nodes, nanos});
+    }
+
+    /**
+     * Records the end of the search
+     * @param nanos the time the search took, in nanoseconds
+     */
+    void finish(long nanos) {
+        this.nanos = nanos;
+    }
+
+    /**
+     * Adds the counts of another thread's search of the same
+     * position to these, iterations are not added
+     * @param other the statistics to add
+     */
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        leaves += other.leaves;
+        for (int i = 0; i < CUTOFF_INDEXES; i++)
+            cutoffs[i] += other.cutoffs[i];
+        if (probes >= 0 && other.probes >= 0) {
+            probes += other.probes;
+            hits += other.hits;
+        }
+    }
+
+    /**
+     * Returns the number of nodes visited
+     * @return the number of nodes
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of positions evaluated
+     * @return the number of evaluations
+     */
+    long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Returns the number of cutoffs caused by the move at an index
+     * @param index the index of the move, 0 for the first move
+     *              tried, CUTOFF_INDEXES - 1 counts every later move
+     * @return the number of cutoffs
+     */
+    long getCutoffs(int index) {
+        return cutoffs[index];
+    }
+
+    /**
+     * Returns the fraction of cutoffs caused by the first move
+     * tried, a measure of how good move ordering is
+     * @return the fraction of first move cutoffs, NaN if there
+     *              were no cutoffs
+     */
+    double getFirstMoveCutoffRate() {
+        long total = 0;
+        for (long c : cutoffs)
+            total += c;
+        return (total == 0) ? Double.NaN : (double) cutoffs[0] / total;
+    }
+
+    /**
+     * Returns the fraction of probes of the transposition table
+     * that found an entry
+     * @return the hit rate, NaN if there is no table or it was
+     *              never probed
+     */
+    double getHashHitRate() {
+        return (probes <= 0) ? Double.NaN : (double) hits / probes;
+    }
+
+    /**
+     * Returns the number of iterations finished
+     * @return the number of iterations
+     */
+    int getIterations() {
+        return iterations.size();
+    }
+
+    /**
+     * Returns the depth of a finished iteration
+     * @param i the number of the iteration, 0 for the first
+     * @return the depth of the iteration
+     */
+    int getIterationDepth(int i) {
+        return (int) iterations.get(i)[0];
+    }
+
+    /**
+     * Returns the nodes visited by a finished iteration
+     * @param i the number of the iteration, 0 for the first
+     * @return the nodes of the iteration
+     */
+    long getIterationNodes(int i) {
+        return iterations.get(i)[1];
+    }
+
+    /**
+     * Returns the time a finished iteration took
+     * @param i the number of the iteration, 0 for the first
+     * @return the time of the iteration, in nanoseconds
+     */
+    long getIterationNanos(int i) {
+        return iterations.get(i)[2];
+    }
+
+    /**
+     * Returns the effective branching factor, how many times more
+     * nodes the last finished iteration took than the one before
+     * @return the effective branching factor, NaN if fewer than
+     *              two iterations finished
+     */
+    double getEffectiveBranchingFactor() {
+        int n = iterations.size();
+        if (n < 2 || iterations.get(n - 2)[1] == 0)
+            return Double.NaN;
+        return (double) iterations.get(n - 1)[1] / iterations.get(n - 2)[1];
+    }
+
+    /**
+     * Returns the time the whole search took
+     * @return the time of the search, in nanoseconds
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns a summary of the statistics, one line for the search
+     * and one for each iteration
+     * @return a summary of the statistics
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(String.format(
+                "%d nodes, %d leaves in %.1f ms, ebf %.2f, first move cutoffs %.1f%%, hash hits %.1f%%",
+                nodes, leaves, nanos / 1e6, getEffectiveBranchingFactor(),
+                100 * getFirstMoveCutoffRate(), 100 * getHashHitRate()));
+        for (long[] iteration : iterations) {
+            result.append(String.format("%n  depth %d: %d nodes in %.1f ms",
+                    iteration[0], iteration[1], iteration[2] / 1e6));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Generates training data for tuning evaluation, by playing games of
+ * PruningBot against itself on a pool of threads and recording every
+ * position it searched, with its search score and the result of the
+ * game. Finished games are handed to a single writer thread that packs
+ * them into chunks and writes them through a file channel, in the
+ * format read by TrainingData.
+ */
+public class SelfPlay {
+    // default number of games to play
+    private static final int GAMES = 1000;
+    // default depth positions are searched to
+    private static final int DEPTH = 6;
+    // default file to write positions to
+    private static final String PATH = "selfplay.bin";
+    // default seed the seed of each game is made from
+    private static final long SEED = 1;
+    // random moves at the start of each game, so that games differ
+    private static final int RANDOM_PLIES = 6;
+    // number of plies after which a game is a draw
+    private static final int MAX_PLIES = 400;
+    // memory budget of each bot's transposition table
+    private static final int TABLE_MEGABYTES = 4;
+    // games waiting to be written before players have to wait
+    private static final int QUEUE_GAMES = 256;
+
+    /**
+     * Plays the games and writes their positions to a file
+     * @param args optional, args[0] is the number of games (default
+     *              1000), args[1] the number of threads (default the
+     *              number of processors), args[2] the search depth
+     *              (default 6), args[3] the file to write to (default
+     *              selfplay.bin) and args[4] the seed (default 1)
+     * @throws IOException if the file can't be written
+     * @throws InterruptedException if interrupted while playing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : GAMES;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int depth = (args.length > 2) ? Integer.parseInt(args[2]) : DEPTH;
+        String path = (args.length > 3) ? args[3] : PATH;
+        long seed = (args.length > 4) ? Long.parseLong(args[4]) : SEED;
+
+        long start = System.nanoTime();
+        BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_GAMES);
+        Writer writer = new Writer(path, queue);
+        Thread writing = new Thread(writer, "SelfPlay writer");
+        writing.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                long gameSeed = seed ^ (i * 0x9E3779B97F4A7C15L);
+                running.add(pool.submit(() -> {
+                    queue.put(play(depth, gameSeed));
+                    return null;
+                }));
+            }
+            for (Future<?> f : running)
+                get(f);
+        } finally {
+            pool.shutdownNow();
+            // an empty game tells the writer there are no more
+            queue.put(ByteBuffer.allocate(0));
+            writing.join();
+        }
+        if (writer.error != null)
+            throw writer.error;
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d positions from %d games in %.1f s (%.0f positions/s), written to %s%n",
+                writer.written, games, seconds, writer.written / seconds, path);
+    }
+
+    /**
+     * Plays one game, after RANDOM_PLIES random moves
+     * @param depth the depth positions are searched to
+     * @param seed the seed of the game's random decisions
+     * @return the records of the searched positions, in the
+     *              layout of TrainingData
+     */
+    static ByteBuffer play(int depth, long seed) {
+        Random r = new Random(seed);
+        Board board = new Board();
+        PruningBot bot = new PruningBot(board, TABLE_MEGABYTES, 1, r);
+        bot.setLimits(depth, 0, 0);
+
+        // masks, turn and score of each position, before the result is known
+        List<long[]> positions = new ArrayList<>();
+        int plies = 0;
+        while (!board.gameOver() && plies < MAX_PLIES) {
+            List<Move> moves = new ArrayList<>(board.getLegalMoves());
+            Move move;
+            if (plies < RANDOM_PLIES) {
+                moves.sort(Comparator.comparing(Move::toString));
+                move = moves.get(r.nextInt(moves.size()));
+            } else if (moves.size() == 1) {
+                move = moves.get(0);
+            } else {
+                move = bot.getMove();
+                if (!board.isJumping()) {
+                    positions.add(new long[] {board.getBlack(), board.getRed(), board.getKings(),
+                            (board.getTurn() == Color.BLACK) ? 0 : 1, bot.getValue()});
+                }
+            }
+            board.move(move);
+            plies++;
+        }
+
+        // the player to move has lost
+        byte result = 0;
+        if (board.gameOver())
+            result = (byte) ((board.getTurn() == Color.RED) ? 1 : -1);
+
+        ByteBuffer records = ByteBuffer.allocate(positions.size() * TrainingData.RECORD_SIZE);
+        for (long[] p : positions) {
+            int score = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, p[4]));
+            records.putInt((int) p[0]).putInt((int) p[1]).putInt((int) p[2])
+                    .putShort((short) score).put((byte) p[3]).put(result);
+        }
+        records.flip();
+        return records;
+    }
+
+    /**
+     * Helper method that waits for a game to finish
+     * @param f the game
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void get(Future<?> f) throws InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes finished games to the file, packed into chunks, until
+     * it is handed an empty game
+     */
+    private static final class Writer implements Runnable {
+        // the file being written
+        private final String path;
+        // finished games, as records
+        private final BlockingQueue<ByteBuffer> queue;
+        // the chunk being filled, written when full
+        private final ByteBuffer chunk;
+        private final CRC32 crc;
+        // number of records written
+        long written;
+        // the error that stopped the writer, null if none
+        volatile IOException error;
+
+        /**
+         * Creates a writer
+         * @param path the file to write
+         * @param queue the queue finished games are put on
+         */
+        Writer(String path, BlockingQueue<ByteBuffer> queue) {
+            this.path = path;
+            this.queue = queue;
+            this.chunk = ByteBuffer.allocateDirect(TrainingData.CHUNK_SIZE);
+            this.crc = new CRC32();
+        }
+
+        /**
+         * Writes games until handed an empty game, and then the
+         * last, partly full chunk
+         */
+        public void run() {
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(TrainingData.HEADER_SIZE);
+                header.putInt(TrainingData.MAGIC).putInt(TrainingData.VERSION)
+                        .putInt(TrainingData.RECORD_SIZE).putInt(TrainingData.CHUNK_RECORDS).flip();
+                writeFully(channel, header);
+
+                chunk.position(TrainingData.CHUNK_HEADER_SIZE);
+                while (true) {
+                    ByteBuffer game = queue.take();
+                    if (!game.hasRemaining())
+                        break;
+                    while (game.hasRemaining()) {
+                        int n = Math.min(game.remaining(), chunk.remaining());
+                        chunk.put(game.slice().limit(n));
+                        game.position(game.position() + n);
+                        if (!chunk.hasRemaining())
+                            flush(channel);
+                    }
+                }
+                if (chunk.position() > TrainingData.CHUNK_HEADER_SIZE)
+                    flush(channel);
+            } catch (IOException e) {
+                // keep taking games so that no player waits forever
+                error = e;
+                try {
+                    while (queue.take().hasRemaining())
+                        ;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Helper method that writes the chunk, with its header, and
+         * starts a new one
+         * @param channel the channel to write to
+         * @throws IOException if the write fails
+         */
+        private void flush(FileChannel channel) throws IOException {
+            int bytes = chunk.position() - TrainingData.CHUNK_HEADER_SIZE;
+            crc.reset();
+            crc.update(chunk.duplicate().position(TrainingData.CHUNK_HEADER_SIZE).limit(chunk.position()));
+            chunk.putInt(0, bytes / TrainingData.RECORD_SIZE);
+            chunk.putInt(Integer.BYTES, (int) crc.getValue());
+
+            chunk.flip();
+            writeFully(channel, chunk);
+            written += bytes / TrainingData.RECORD_SIZE;
+            chunk.clear().position(TrainingData.CHUNK_HEADER_SIZE);
+        }
+
+        /**
+         * Helper method that writes all of a buffer to a channel
+         * @param channel the channel to write to
+         * @param buffer the buffer to write
+         * @throws IOException if the write fails
+         */
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+}
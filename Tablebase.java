@@ -0,0 +1,316 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Read-only endgame tablebase, holding whether the player to move
+ * wins, loses or draws every position with few enough pieces, as
+ * written by TablebaseGenerator. The file is memory-mapped, so a
+ * probe is a single read and the tables are shared with the page
+ * cache instead of being loaded onto the heap.
+ */
+final class Tablebase {
+    /*
+     * Positions are grouped into tables by material: the number of
+     * black men, black kings, red men and red kings. Within a table a
+     * position's index is built from the rank of each group's places
+     * (black men can't be on black's king row and red men can't be on
+     * red's, so men have MAN_PLACES places to choose from) and whose
+     * turn it is. Each position is one byte, bits 0-1 hold the result
+     * for the player to move and bits 2-7 the number of plies to the
+     * end of the game with best play (63 meaning 63 or more).
+     *
+     * The file starts with MAGIC, VERSION, the most pieces in a
+     * position and the number of tables, then for each table its
+     * material (four ints), offset (long) and size (int) in bytes,
+     * followed by the tables themselves.
+     */
+
+    /**
+     * Result of a position that is not in the tablebase
+     */
+    static final int UNKNOWN = -1;
+
+    /**
+     * Result of a drawn position
+     */
+    static final int DRAW = 0;
+
+    /**
+     * Result of a position the player to move wins
+     */
+    static final int WIN = 1;
+
+    /**
+     * Result of a position the player to move loses
+     */
+    static final int LOSS = 2;
+
+    /**
+     * Result of an index that is not a legal position
+     */
+    static final int ILLEGAL = 3;
+
+    /**
+     * Largest distance stored, longer distances are stored as this
+     */
+    static final int MAX_DISTANCE = 63;
+
+    // File header
+    static final int MAGIC = 0x434B5442;
+    static final int VERSION = 1;
+
+    // Number of places men and kings can stand on
+    private static final int MAN_PLACES = 28;
+    private static final int KING_PLACES = 32;
+    // Lowest place index red men can stand on
+    private static final int RED_MAN_OFFSET = KING_PLACES - MAN_PLACES;
+    // Binomial coefficients, CHOOSE[n][k]
+    private static final int[][] CHOOSE = new int[KING_PLACES + 1][KING_PLACES + 1];
+
+    static {
+        for (int n = 0; n <= KING_PLACES; n++) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= n; k++)
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+        }
+    }
+
+    // Most pieces in a position in the tablebase
+    private final int maxPieces;
+    // Tables by material, as numbered by material()
+    private final ByteBuffer[] tables;
+
+    /**
+     * Opens the tablebase file at the given path
+     * @param path the path of the file
+     * @throws IOException if the file can't be read or is not
+     *              a tablebase
+     */
+    Tablebase(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException(path + " is not a checkers tablebase");
+            this.maxPieces = header.getInt(8);
+            int count = header.getInt(12);
+            this.tables = new ByteBuffer[tableCount(maxPieces)];
+
+            int entrySize = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+            ByteBuffer directory = ByteBuffer.allocate(count * entrySize);
+            readFully(channel, directory, header.capacity());
+            for (int i = 0; i < count; i++) {
+                int at = i * entrySize;
+                int id = material(directory.getInt(at), directory.getInt(at + 4),
+                        directory.getInt(at + 8), directory.getInt(at + 12), maxPieces);
+                long offset = directory.getLong(at + 16);
+                int size = directory.getInt(at + 24);
+                tables[id] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            }
+        }
+    }
+
+    /**
+     * Returns the most pieces a position in the tablebase can have
+     * @return the most pieces in a position
+     */
+    int getMaxPieces() {
+        return this.maxPieces;
+    }
+
+    /**
+     * Returns the result of the position for the player to move
+     * @param board the position to look up
+     * @return WIN, LOSS or DRAW, UNKNOWN if the position has too
+     *              many pieces, is in the middle of a multi-jump, or
+     *              its table is missing
+     */
+    int probe(Board board) {
+        int entry = entry(board);
+        if (entry < 0)
+            return UNKNOWN;
+        return entry & 0x3;
+    }
+
+    /**
+     * Returns the number of plies to the end of the game with best
+     * play, for a position that is won or lost
+     * @param board the position to look up
+     * @return the number of plies left (MAX_DISTANCE if that many
+     *              or more), -1 if the position is unknown
+     */
+    int probeDistance(Board board) {
+        int entry = entry(board);
+        if (entry < 0)
+            return -1;
+        return entry >>> 2;
+    }
+
+    /**
+     * Helper method that returns the stored byte of a position
+     * @param board the position to look up
+     * @return the stored byte, -1 if the position is unknown
+     */
+    private int entry(Board board) {
+        int black = board.getBlack();
+        int red = board.getRed();
+        int kings = board.getKings();
+        if (board.isJumping() || Integer.bitCount(black | red) > maxPieces)
+            return -1;
+
+        int id = material(Integer.bitCount(black & ~kings), Integer.bitCount(black & kings),
+                Integer.bitCount(red & ~kings), Integer.bitCount(red & kings), maxPieces);
+        if (tables[id] == null)
+            return -1;
+        return tables[id].get(index(black, red, kings, board.getTurn())) & 0xFF;
+    }
+
+    /**
+     * Returns the number of table numbers used for positions of up
+     * to maxPieces pieces
+     * @param maxPieces the most pieces in a position
+     * @return the number of table numbers
+     */
+    static int tableCount(int maxPieces) {
+        int n = maxPieces + 1;
+        return n * n * n * n;
+    }
+
+    /**
+     * Returns the table number of the given material
+     * @param blackMen the number of black men
+     * @param blackKings the number of black kings
+     * @param redMen the number of red men
+     * @param redKings the number of red kings
+     * @param maxPieces the most pieces in a position
+     * @return the table number
+     */
+    static int material(int blackMen, int blackKings, int redMen, int redKings, int maxPieces) {
+        int n = maxPieces + 1;
+        return ((blackMen * n + blackKings) * n + redMen) * n + redKings;
+    }
+
+    /**
+     * Returns the number of positions in the table of the given
+     * material
+     * @param blackMen the number of black men
+     * @param blackKings the number of black kings
+     * @param redMen the number of red men
+     * @param redKings the number of red kings
+     * @return the number of positions (including illegal ones)
+     */
+    static int tableSize(int blackMen, int blackKings, int redMen, int redKings) {
+        long size = 2L * CHOOSE[MAN_PLACES][blackMen] * CHOOSE[KING_PLACES][blackKings]
+                * CHOOSE[MAN_PLACES][redMen] * CHOOSE[KING_PLACES][redKings];
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("table too large");
+        return (int) size;
+    }
+
+    /**
+     * Returns the index of a position within the table of its
+     * material
+     * @param black the mask of black pieces
+     * @param red the mask of red pieces
+     * @param kings the mask of kings
+     * @param turn which color's turn it is
+     * @return the index of the position
+     */
+    static int index(int black, int red, int kings, Color turn) {
+        int blackKings = black & kings;
+        int redMen = red & ~kings;
+        int redKings = red & kings;
+
+        int index = rank(black & ~kings, 0);
+        index = index * CHOOSE[KING_PLACES][Integer.bitCount(blackKings)] + rank(blackKings, 0);
+        index = index * CHOOSE[MAN_PLACES][Integer.bitCount(redMen)] + rank(redMen, RED_MAN_OFFSET);
+        index = index * CHOOSE[KING_PLACES][Integer.bitCount(redKings)] + rank(redKings, 0);
+        return index * 2 + ((turn == Color.BLACK) ? 0 : 1);
+    }
+
+    /**
+     * Returns the position at an index of the table of the given
+     * material, as {black, red, kings, turn}, where turn is 0 for
+     * black and 1 for red. Groups of pieces may overlap, in which
+     * case the index is not a legal position
+     * @param index the index of the position
+     * @param blackMen the number of black men
+     * @param blackKings the number of black kings
+     * @param redMen the number of red men
+     * @param redKings the number of red kings
+     * @param position the array to write the position into
+     */
+    static void position(int index, int blackMen, int blackKings, int redMen, int redKings, int[] position) {
+        position[3] = index & 1;
+        index >>>= 1;
+
+        int size = CHOOSE[KING_PLACES][redKings];
+        int rk = unrank(index % size, redKings, 0);
+        index /= size;
+        size = CHOOSE[MAN_PLACES][redMen];
+        int rm = unrank(index % size, redMen, RED_MAN_OFFSET);
+        index /= size;
+        size = CHOOSE[KING_PLACES][blackKings];
+        int bk = unrank(index % size, blackKings, 0);
+        index /= size;
+        int bm = unrank(index, blackMen, 0);
+
+        position[0] = bm | bk;
+        position[1] = rm | rk;
+        position[2] = bk | rk;
+    }
+
+    /**
+     * Helper method that returns the rank of a set of places among
+     * all sets of the same size, in colexicographic order
+     * @param mask the set of places
+     * @param offset the lowest place index the set can hold
+     * @return the rank of the set
+     */
+    private static int rank(int mask, int offset) {
+        int result = 0;
+        int k = 1;
+        for (; mask != 0; mask &= mask - 1)
+            result += CHOOSE[Integer.numberOfTrailingZeros(mask) - offset][k++];
+        return result;
+    }
+
+    /**
+     * Helper method that returns the set of places of the given
+     * size and rank, the inverse of rank()
+     * @param rank the rank of the set
+     * @param size the number of places in the set
+     * @param offset the lowest place index the set can hold
+     * @return the set of places, as a mask
+     */
+    private static int unrank(int rank, int size, int offset) {
+        int result = 0;
+        int place = KING_PLACES - offset;
+        for (int k = size; k > 0; k--) {
+            do {
+                place--;
+            } while (CHOOSE[place][k] > rank);
+            result |= 1 << (place + offset);
+            rank -= CHOOSE[place][k];
+        }
+        return result;
+    }
+
+    /**
+     * Helper method that reads bytes from a channel until the
+     * buffer is full
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill
+     * @param position the position in the file to start reading at
+     * @throws IOException if the file ends first
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new EOFException("tablebase file is truncated");
+        }
+    }
+}
@@ -0,0 +1,319 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Builds the endgame tablebase read by Tablebase, by retrograde
+ * analysis of every position with up to a given number of pieces.
+ * Tables are solved smallest first, so every capture or crowning
+ * leads to a table that is already solved, and the positions of
+ * each table are solved on all cores.
+ */
+public class TablebaseGenerator {
+    // default most pieces in a position
+    private static final int MAX_PIECES = 4;
+    // default file to write the tablebase to
+    private static final String PATH = "checkers.tb";
+    // value of a position that isn't solved yet
+    private static final short UNSOLVED = -1;
+
+    // most pieces in a position
+    private final int maxPieces;
+    // solved tables by material, as numbered by Tablebase.material(),
+    // each value is a result | distance << 2, with the distance not
+    // yet capped to what the file holds
+    private final short[][] tables;
+    // material of each table, in the order they are solved
+    private final List<int[]> order;
+    // most plies to the end of the game in any solved table
+    private int maxDistance;
+
+    /**
+     * Builds the tablebase and writes it to a file
+     * @param args optional, args[0] is the most pieces in a
+     *              position (default 4) and args[1] the file
+     *              to write to (default checkers.tb)
+     * @throws IOException if the file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        int pieces = (args.length > 0) ? Integer.parseInt(args[0]) : MAX_PIECES;
+        String path = (args.length > 1) ? args[1] : PATH;
+
+        long start = System.nanoTime();
+        TablebaseGenerator generator = new TablebaseGenerator(pieces);
+        generator.solve();
+        generator.write(path);
+        System.out.printf("Wrote %s in %.1f s%n", path, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Creates a generator for positions with up to the given
+     * number of pieces
+     * @param maxPieces the most pieces in a position
+     * @throws IllegalArgumentException if maxPieces is less than 2
+     */
+    TablebaseGenerator(int maxPieces) {
+        if (maxPieces < 2)
+            throw new IllegalArgumentException("need at least two pieces, was " + maxPieces);
+
+        this.maxPieces = maxPieces;
+        this.tables = new short[Tablebase.tableCount(maxPieces)][];
+        this.order = new ArrayList<>();
+
+        // both colors need a piece, and a table can only depend on
+        // tables with fewer pieces or (by crowning) fewer men
+        for (int bm = 0; bm <= maxPieces; bm++) {
+            for (int bk = 0; bm + bk <= maxPieces; bk++) {
+                for (int rm = 0; bm + bk + rm <= maxPieces; rm++) {
+                    for (int rk = 0; bm + bk + rm + rk <= maxPieces; rk++) {
+                        if (bm + bk > 0 && rm + rk > 0)
+                            order.add(new int[] {bm, bk, rm, rk});
+                    }
+                }
+            }
+        }
+        order.sort(Comparator.comparingInt((int[] m) -> m[0] + m[1] + m[2] + m[3])
+                .thenComparingInt(m -> m[0] + m[2]));
+    }
+
+    /**
+     * Solves every table, smallest first
+     */
+    void solve() {
+        for (int[] m : order) {
+            long start = System.nanoTime();
+            int[] counts = solve(m[0], m[1], m[2], m[3]);
+            System.out.printf("%d %d %d %d: %,d positions, %,d wins, %,d losses, %,d draws (%d ms)%n",
+                    m[0], m[1], m[2], m[3], counts[0] + counts[1] + counts[2],
+                    counts[Tablebase.WIN], counts[Tablebase.LOSS], counts[Tablebase.DRAW],
+                    (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * Helper method that solves the table of the given material.
+     * Sweep 0 marks illegal positions and positions with no moves,
+     * then sweep k finds the positions k plies from the end of the
+     * game, by only looking at moves to positions solved at fewer
+     * plies. Once a sweep finds nothing and no solved table has
+     * longer games left, the positions that are left are draws
+     * @param bm the number of black men
+     * @param bk the number of black kings
+     * @param rm the number of red men
+     * @param rk the number of red kings
+     * @return the number of draws, wins and losses, by result
+     */
+    private int[] solve(int bm, int bk, int rm, int rk) {
+        short[] table = new short[Tablebase.tableSize(bm, bk, rm, rk)];
+        tables[Tablebase.material(bm, bk, rm, rk, maxPieces)] = table;
+
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        IntStream.range(0, table.length).parallel()
+                .forEach(i -> table[i] = workers.get().initial(i, bm, bk, rm, rk));
+
+        int tableDistance = 0;
+        for (int k = 1; ; k++) {
+            final int sweep = k;
+            long found = IntStream.range(0, table.length).parallel()
+                    .filter(i -> table[i] == UNSOLVED)
+                    .filter(i -> {
+                        short v = workers.get().sweep(i, bm, bk, rm, rk, sweep);
+                        if (v == UNSOLVED)
+                            return false;
+                        table[i] = v;
+                        return true;
+                    })
+                    .count();
+            if (found > 0)
+                tableDistance = k;
+            else if (k > maxDistance)
+                break;
+        }
+        maxDistance = Math.max(maxDistance, tableDistance);
+
+        int[] counts = new int[4];
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == UNSOLVED)
+                table[i] = Tablebase.DRAW;
+            counts[table[i] & 0x3]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Writes the solved tables to a file, in the layout read by
+     * Tablebase
+     * @param path the path of the file
+     * @throws IOException if the file can't be written
+     */
+    void write(String path) throws IOException {
+        int entrySize = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+        ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + order.size() * entrySize);
+        header.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION)
+                .putInt(maxPieces).putInt(order.size());
+
+        long offset = header.capacity();
+        for (int[] m : order) {
+            header.putInt(m[0]).putInt(m[1]).putInt(m[2]).putInt(m[3]);
+            header.putLong(offset).putInt(Tablebase.tableSize(m[0], m[1], m[2], m[3]));
+            offset += Tablebase.tableSize(m[0], m[1], m[2], m[3]);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (int[] m : order) {
+                short[] table = tables[Tablebase.material(m[0], m[1], m[2], m[3], maxPieces)];
+                ByteBuffer data = ByteBuffer.allocate(table.length);
+                for (short v : table) {
+                    int distance = Math.min(v >>> 2, Tablebase.MAX_DISTANCE);
+                    data.put((byte) ((v & 0x3) | distance << 2));
+                }
+                data.flip();
+                writeFully(channel, data);
+            }
+        }
+    }
+
+    /**
+     * Helper method that writes all of a buffer to a channel
+     * @param channel the channel to write to
+     * @param buffer the buffer to write
+     * @throws IOException if the write fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Solves single positions, each thread has its own so that
+     * the board and move buffers are reused without locking
+     */
+    private class Worker {
+        // the board positions are set up on
+        private final Board board = new Board();
+        // the position being solved, as by Tablebase.position()
+        private final int[] position = new int[4];
+        // buffers for the packed moves at each hop of a turn
+        private final int[][] moves = new int[Board.MAX_PIECES][Board.MAX_MOVES];
+        // sweep being run, only positions solved in earlier sweeps count
+        private int sweep;
+        // whether a move to a lost position was found, and whether
+        // every move leads to a won position
+        private boolean win;
+        private boolean allWins;
+
+        /**
+         * Returns the value of a position before any sweeps
+         * @param index the index of the position in its table
+         * @param bm the number of black men
+         * @param bk the number of black kings
+         * @param rm the number of red men
+         * @param rk the number of red kings
+         * @return ILLEGAL, LOSS in 0 plies if there are no moves,
+         *              UNSOLVED otherwise
+         */
+        short initial(int index, int bm, int bk, int rm, int rk) {
+            if (!setUp(index, bm, bk, rm, rk))
+                return Tablebase.ILLEGAL;
+            if (board.generateMoves(moves[0], 0) == 0)
+                return Tablebase.LOSS;
+            return UNSOLVED;
+        }
+
+        /**
+         * Returns the value of a position after a sweep
+         * @param index the index of the position in its table
+         * @param bm the number of black men
+         * @param bk the number of black kings
+         * @param rm the number of red men
+         * @param rk the number of red kings
+         * @param sweep the number of the sweep
+         * @return WIN or LOSS in sweep plies, UNSOLVED if the
+         *              position isn't solved at this many plies
+         */
+        short sweep(int index, int bm, int bk, int rm, int rk, int sweep) {
+            setUp(index, bm, bk, rm, rk);
+            this.sweep = sweep;
+            this.win = false;
+            this.allWins = true;
+            expand(0, board.getTurn());
+
+            if (win)
+                return (short) (Tablebase.WIN | sweep << 2);
+            if (allWins)
+                return (short) (Tablebase.LOSS | sweep << 2);
+            return UNSOLVED;
+        }
+
+        /**
+         * Helper method that sets up the board with a position
+         * @return false if pieces overlap, true otherwise
+         */
+        private boolean setUp(int index, int bm, int bk, int rm, int rk) {
+            Tablebase.position(index, bm, bk, rm, rk, position);
+            int black = position[0];
+            int red = position[1];
+            int kings = position[2];
+            if ((black & red) != 0 || Integer.bitCount(black | red) != bm + bk + rm + rk)
+                return false;
+            board.setPosition(black, red, kings, (position[3] == 0) ? Color.BLACK : Color.RED);
+            return true;
+        }
+
+        /**
+         * Helper method that makes every full turn from the board,
+         * following multi-jumps to the end, and looks up the
+         * position each one leads to
+         * @param hop the number of jumps made so far this turn
+         * @param mover the color whose turn it is
+         */
+        private void expand(int hop, Color mover) {
+            int count = board.generateMoves(moves[hop], 0);
+            for (int i = 0; i < count && !win; i++) {
+                int m = moves[hop][i];
+                long undo = board.makeMove(m);
+                if (board.getTurn() == mover)
+                    expand(hop + 1, mover);
+                else
+                    lookUp();
+                board.unmakeMove(m, undo);
+            }
+        }
+
+        /**
+         * Helper method that looks up the position on the board,
+         * where the opponent is to move, and counts it towards the
+         * result if it was solved before this sweep
+         */
+        private void lookUp() {
+            int black = board.getBlack();
+            int red = board.getRed();
+            int kings = board.getKings();
+            int opponent = (board.getTurn() == Color.BLACK) ? black : red;
+
+            // no pieces left is a loss with no moves
+            int value = Tablebase.LOSS;
+            if (opponent != 0) {
+                short[] table = tables[Tablebase.material(Integer.bitCount(black & ~kings),
+                        Integer.bitCount(black & kings), Integer.bitCount(red & ~kings),
+                        Integer.bitCount(red & kings), maxPieces)];
+                value = table[Tablebase.index(black, red, kings, board.getTurn())];
+            }
+
+            int distance = value >>> 2;
+            if (value == UNSOLVED || distance >= sweep) {
+                allWins = false;
+            } else if ((value & 0x3) == Tablebase.LOSS) {
+                win = true;
+            } else if ((value & 0x3) != Tablebase.WIN) {
+                allWins = false;
+            }
+        }
+    }
+}
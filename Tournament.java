@@ -0,0 +1,231 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Plays many games between two players without the UI, several at
+ * once on a pool of threads, and writes the result of each game to a
+ * results file as it finishes. Each game has its own seed for the
+ * players' random decisions, so any game can be replayed, and the
+ * players swap colors every game. Each thread keeps its own pair of
+ * players from game to game, which forget everything between games,
+ * so bots with large tables are only created once per thread.
+ */
+public class Tournament {
+    /*
+     * The results file is a sequence of RECORD_SIZE byte records in
+     * the order games finish, each holding the game number (int), the
+     * seed of the game (long), the number of plies (short), the result
+     * (byte, one of the constants below), whether the first player
+     * played black (byte), and the total time each player spent
+     * choosing moves in microseconds (two ints, first player first)
+     */
+
+    /**
+     * Result of a game won by the first player
+     */
+    static final byte FIRST_WINS = 0;
+
+    /**
+     * Result of a game won by the second player
+     */
+    static final byte SECOND_WINS = 1;
+
+    /**
+     * Result of a game that reached the ply limit
+     */
+    static final byte DRAW = 2;
+
+    /**
+     * Bytes per game in the results file
+     */
+    static final int RECORD_SIZE = Integer.BYTES + Long.BYTES + Short.BYTES + 2 + 2 * Integer.BYTES;
+
+    // default number of games to play
+    private static final int GAMES = 100;
+    // default seed the seed of each game is made from
+    private static final long SEED = 1;
+    // default file to write results to
+    private static final String PATH = "tournament.bin";
+    // default number of plies after which a game is a draw
+    private static final int MAX_PLIES = 400;
+
+    /**
+     * Plays a tournament and prints a summary of it
+     * @param args args[0] and args[1] are the types of the two
+     *              players, as in App, optionally followed by the
+     *              number of games (default 100), the number of
+     *              threads (default the number of processors), the
+     *              seed (default 1), the results file (default
+     *              tournament.bin) and the number of plies after
+     *              which a game is a draw (default 400)
+     * @throws IOException if the results file can't be written
+     * @throws InterruptedException if interrupted while playing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java Tournament <player> <player> [games] [threads] "
+                    + "[seed] [results file] [max plies]");
+            return;
+        }
+        String first = args[0].trim();
+        String second = args[1].trim();
+        int games = (args.length > 2) ? Integer.parseInt(args[2]) : GAMES;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        long seed = (args.length > 4) ? Long.parseLong(args[4]) : SEED;
+        String path = (args.length > 5) ? args[5] : PATH;
+        int maxPlies = (args.length > 6) ? Integer.parseInt(args[6]) : MAX_PLIES;
+
+        for (String type : new String[] {first, second}) {
+            if (type.equals("human") || !Arrays.asList(App.knownPlayers).contains(type)) {
+                System.out.println("Unknown or interactive player type: " + type);
+                return;
+            }
+        }
+
+        // results by FIRST_WINS, SECOND_WINS and DRAW, total plies
+        // and the time each player spent in microseconds
+        AtomicLongArray totals = new AtomicLongArray(6);
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Match> matches = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<Match> match = ThreadLocal.withInitial(() -> {
+            Match m = new Match(first, second);
+            matches.add(m);
+            return m;
+        });
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                int game = i;
+                running.add(pool.submit(() -> {
+                    long gameSeed = seed ^ (game * 0x9E3779B97F4A7C15L);
+                    ByteBuffer record = match.get().play(game, gameSeed, maxPlies);
+                    totals.incrementAndGet(record.get(14));
+                    totals.addAndGet(3, record.getShort(12));
+                    totals.addAndGet(4, record.getInt(16));
+                    totals.addAndGet(5, record.getInt(20));
+                    synchronized (out) {
+                        out.write(record.array());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : running)
+                get(f);
+            for (Match m : matches)
+                m.close();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long plies = Math.max(totals.get(3), 1);
+        System.out.printf("%d games in %.1f s (%.1f games/s), results in %s%n",
+                games, seconds, games / seconds, path);
+        System.out.printf("%s wins %d, %s wins %d, draws %d%n", first, totals.get(FIRST_WINS),
+                second, totals.get(SECOND_WINS), totals.get(DRAW));
+        System.out.printf("mean time per move: %s %.3f ms, %s %.3f ms%n",
+                first, totals.get(4) / 1000.0 / (plies / 2.0),
+                second, totals.get(5) / 1000.0 / (plies / 2.0));
+    }
+
+    /**
+     * Helper method that waits for a game to finish
+     * @param f the game
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void get(Future<?> f) throws InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * One thread's pair of players, and the board they hold a
+     * reference to, which is set back to the start for each game
+     */
+    private static final class Match {
+        // the position at the start of every game
+        private static final Board START = new Board();
+
+        // the board the players play on
+        private final Board board;
+        // the players' random number generators, seeded for each game
+        private final Random[] randoms;
+        // the first player then the second
+        private final Player[] players;
+
+        /**
+         * Creates the players of a thread
+         * @param first the type of the first player
+         * @param second the type of the second player
+         */
+        Match(String first, String second) {
+            this.board = new Board();
+            this.randoms = new Random[] {new Random(), new Random()};
+            this.players = new Player[] {
+                App.createPlayer(first, board, randoms[0]),
+                App.createPlayer(second, board, randoms[1]),
+            };
+        }
+
+        /**
+         * Plays one game, the first player is black in even games
+         * @param game the number of the game
+         * @param seed the seed of the players' random decisions
+         * @param maxPlies the number of plies after which the game
+         *              is a draw
+         * @return the record of the game, as written to the results file
+         */
+        ByteBuffer play(int game, long seed, int maxPlies) {
+            board.setPosition(START.getBlack(), START.getRed(), START.getKings(), START.getTurn());
+            boolean firstIsBlack = (game % 2 == 0);
+            randoms[0].setSeed(seed);
+            randoms[1].setSeed(seed + 1);
+            for (Player player : players)
+                player.newGame();
+            long[] micros = new long[2];
+
+            int plies = 0;
+            while (!board.gameOver() && plies < maxPlies) {
+                int p = ((board.getTurn() == Color.BLACK) == firstIsBlack) ? 0 : 1;
+                long start = System.nanoTime();
+                Move move = players[p].getMove();
+                micros[p] += (System.nanoTime() - start) / 1000;
+                board.move(move);
+                plies++;
+            }
+
+            byte result = DRAW;
+            if (board.gameOver()) {
+                // the player to move has lost
+                boolean blackWon = (board.getTurn() == Color.RED);
+                result = (blackWon == firstIsBlack) ? FIRST_WINS : SECOND_WINS;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putInt(game).putLong(seed).putShort((short) plies)
+                    .put(result).put((byte) (firstIsBlack ? 1 : 0))
+                    .putInt((int) Math.min(micros[0], Integer.MAX_VALUE))
+                    .putInt((int) Math.min(micros[1], Integer.MAX_VALUE));
+            return record;
+        }
+
+        /**
+         * Stops anything the players still run
+         */
+        void close() {
+            for (Player player : players)
+                player.close();
+        }
+    }
+}
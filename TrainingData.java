@@ -0,0 +1,207 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/**
+ * Read-only set of positions from self-play games, as written by
+ * SelfPlay, for tuning evaluation. The file is memory-mapped, so any
+ * position can be read without loading the file or copying it onto
+ * the heap.
+ */
+final class TrainingData {
+    /*
+     * The file starts with MAGIC, VERSION, RECORD_SIZE and
+     * CHUNK_RECORDS, then holds chunks of CHUNK_SIZE bytes. Each chunk
+     * starts with the number of records in it and the CRC-32 of those
+     * records, then the records, every chunk but the last is full.
+     * Each record holds the masks of black pieces, red pieces and kings
+     * (bit (place - 1) set if there is one at place, three ints), the
+     * search score (short, positive is good for black), whose turn it
+     * is (byte, 0 for black, 1 for red) and the result of the game
+     * (byte, 1 if black won, -1 if red won, 0 for a draw)
+     */
+
+    // File header
+    static final int MAGIC = 0x434B5444;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    // Layout of records
+    static final int RECORD_SIZE = 3 * Integer.BYTES + Short.BYTES + 2;
+    static final int SCORE_OFFSET = 3 * Integer.BYTES;
+    static final int TURN_OFFSET = SCORE_OFFSET + Short.BYTES;
+    static final int RESULT_OFFSET = TURN_OFFSET + 1;
+
+    // Layout of chunks
+    static final int CHUNK_RECORDS = 1 << 16;
+    static final int CHUNK_HEADER_SIZE = 2 * Integer.BYTES;
+    static final int CHUNK_SIZE = CHUNK_HEADER_SIZE + CHUNK_RECORDS * RECORD_SIZE;
+
+    // Chunks mapped at once, so that no mapping is over 2 GB
+    private static final int SEGMENT_CHUNKS = Integer.MAX_VALUE / CHUNK_SIZE;
+
+    // Mappings of the chunks, SEGMENT_CHUNKS per mapping
+    private final ByteBuffer[] segments;
+    // Number of chunks and records in the file
+    private final int chunks;
+    private final long size;
+
+    /**
+     * Opens the training data file at the given path
+     * @param path the path of the file
+     * @throws IOException if the file can't be read or is not
+     *              training data
+     */
+    TrainingData(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    throw new EOFException(path + " is truncated");
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getInt(8) != RECORD_SIZE || header.getInt(12) != CHUNK_RECORDS)
+                throw new IOException(path + " is not checkers training data");
+
+            long length = channel.size() - HEADER_SIZE;
+            this.chunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.segments = new ByteBuffer[(chunks + SEGMENT_CHUNKS - 1) / SEGMENT_CHUNKS];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = HEADER_SIZE + (long) i * SEGMENT_CHUNKS * CHUNK_SIZE;
+                long bytes = Math.min((long) SEGMENT_CHUNKS * CHUNK_SIZE, channel.size() - offset);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+            }
+
+            if (chunks == 0) {
+                this.size = 0;
+            } else {
+                long last = (long) (chunks - 1) * CHUNK_RECORDS;
+                this.size = last + chunk(chunks - 1).getInt(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of positions in the file
+     * @return the number of positions
+     */
+    long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the mask of black pieces of a position
+     * @param i the number of the position
+     * @return the mask of black pieces
+     */
+    int getBlack(long i) {
+        return segment(i).getInt(offset(i));
+    }
+
+    /**
+     * Returns the mask of red pieces of a position
+     * @param i the number of the position
+     * @return the mask of red pieces
+     */
+    int getRed(long i) {
+        return segment(i).getInt(offset(i) + Integer.BYTES);
+    }
+
+    /**
+     * Returns the mask of kings of a position
+     * @param i the number of the position
+     * @return the mask of kings of either color
+     */
+    int getKings(long i) {
+        return segment(i).getInt(offset(i) + 2 * Integer.BYTES);
+    }
+
+    /**
+     * Returns the search score of a position
+     * @param i the number of the position
+     * @return the score, positive is good for black
+     */
+    int getScore(long i) {
+        return segment(i).getShort(offset(i) + SCORE_OFFSET);
+    }
+
+    /**
+     * Returns whose turn it is in a position
+     * @param i the number of the position
+     * @return the color to move
+     */
+    Color getTurn(long i) {
+        return (segment(i).get(offset(i) + TURN_OFFSET) == 0) ? Color.BLACK : Color.RED;
+    }
+
+    /**
+     * Returns the result of the game a position is from
+     * @param i the number of the position
+     * @return 1 if black won, -1 if red won, 0 for a draw
+     */
+    int getResult(long i) {
+        return segment(i).get(offset(i) + RESULT_OFFSET);
+    }
+
+    /**
+     * Returns a board holding a position
+     * @param i the number of the position
+     * @return a new board holding the position
+     */
+    Board getBoard(long i) {
+        return new Board(getBlack(i), getRed(i), getKings(i), getTurn(i));
+    }
+
+    /**
+     * Checks every chunk against its CRC-32
+     * @throws IOException if a chunk is corrupt
+     */
+    void verify() throws IOException {
+        CRC32 crc = new CRC32();
+        for (int c = 0; c < chunks; c++) {
+            ByteBuffer chunk = chunk(c);
+            int count = chunk.getInt(0);
+            crc.reset();
+            crc.update(chunk.position(CHUNK_HEADER_SIZE).limit(CHUNK_HEADER_SIZE + count * RECORD_SIZE));
+            if ((int) crc.getValue() != chunk.getInt(Integer.BYTES))
+                throw new IOException("chunk " + c + " is corrupt");
+        }
+    }
+
+    /**
+     * Helper method that returns a view of a chunk
+     * @param c the number of the chunk
+     * @return the chunk, starting at its header
+     */
+    private ByteBuffer chunk(int c) {
+        ByteBuffer segment = segments[c / SEGMENT_CHUNKS];
+        int offset = (c % SEGMENT_CHUNKS) * CHUNK_SIZE;
+        return segment.duplicate().position(offset)
+                .limit(Math.min(offset + CHUNK_SIZE, segment.capacity())).slice();
+    }
+
+    /**
+     * Helper method that returns the mapping a record is in
+     * @param i the number of the record
+     * @return the mapping holding the record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    private ByteBuffer segment(long i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("no position " + i + ", size is " + size);
+        return segments[(int) (i / CHUNK_RECORDS) / SEGMENT_CHUNKS];
+    }
+
+    /**
+     * Helper method that returns where a record is in its mapping
+     * @param i the number of the record
+     * @return the offset of the record in the mapping
+     */
+    private static int offset(long i) {
+        int c = (int) (i / CHUNK_RECORDS);
+        return (c % SEGMENT_CHUNKS) * CHUNK_SIZE + CHUNK_HEADER_SIZE
+                + (int) (i % CHUNK_RECORDS) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,199 @@
+import java.nio.*;
+
+/**
+ * Fixed size table of search results keyed by Zobrist key, stored
+ * off-heap so that its memory use is set once and never touches the
+ * garbage collector. Entries live in buckets of two, when a bucket is
+ * full the shallower entry (or one left over from an earlier search)
+ * is replaced, so deep results survive the flood of shallow ones.
+ * The table can be shared by threads without locking, entries are
+ * stored with their key xored with their data, so an entry torn by
+ * two threads writing at once no longer matches its key and is
+ * treated as missing.
+ */
+final class TranspositionTable {
+    /*
+     * Each entry is 16 bytes, the key (xored with the data word)
+     * followed by a data word laid out as:
+     *   bits  0-31 score
+     *   bits 32-47 best turn (its id, as by Board.turnId())
+     *   bits 48-55 depth
+     *   bits 56-57 bound
+     *   bits 58-63 generation (which search stored the entry)
+     * An empty entry has a data word of 0, no stored entry does since
+     * bounds start at 1
+     */
+
+    /**
+     * Bound type of an entry whose score is the exact value
+     */
+    static final int EXACT = 1;
+
+    /**
+     * Bound type of an entry whose score is a lower bound on the value
+     */
+    static final int LOWER = 2;
+
+    /**
+     * Bound type of an entry whose score is an upper bound on the value
+     */
+    static final int UPPER = 3;
+
+    // Bytes per entry and entries per bucket
+    private static final int ENTRY_SIZE = 16;
+    private static final int BUCKET_SIZE = 2;
+
+    // Off-heap storage for the entries
+    private final ByteBuffer table;
+    // Number of buckets - 1, the number of buckets is a power of two
+    private final int mask;
+    // Generation of the current search
+    private int generation;
+
+    /**
+     * Creates a new, empty table using at most the given amount of
+     * memory
+     * @param megabytes the memory budget of the table, in megabytes
+     * @throws IllegalArgumentException if megabytes is less than 1
+     *              or more than 1024
+     */
+    TranspositionTable(int megabytes) {
+        if (megabytes < 1 || megabytes > 1024)
+            throw new IllegalArgumentException("table size must be 1 - 1024 megabytes, was " + megabytes);
+
+        // round the number of buckets down to a power of two
+        int buckets = Integer.highestOneBit((megabytes << 20) / (ENTRY_SIZE * BUCKET_SIZE));
+        this.table = ByteBuffer.allocateDirect(buckets * ENTRY_SIZE * BUCKET_SIZE)
+                .order(ByteOrder.nativeOrder());
+        this.mask = buckets - 1;
+        this.generation = 0;
+    }
+
+    /**
+     * Starts a new search, entries stored by earlier searches are
+     * kept but are the first to be replaced
+     */
+    void newSearch() {
+        generation = (generation + 1) & 0x3F;
+    }
+
+    /**
+     * Empties the table, which is then as it was when created
+     */
+    void clear() {
+        for (int i = 0; i < table.capacity(); i += Long.BYTES)
+            table.putLong(i, 0);
+        generation = 0;
+    }
+
+    /**
+     * Returns the data word of the entry for the given key, which
+     * is read with score(), move(), depth() and bound()
+     * @param key the Zobrist key of the position
+     * @return the data word of the entry, 0 if there is none
+     */
+    long probe(long key) {
+        int bucket = bucket(key);
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int entry = bucket + i * ENTRY_SIZE;
+            long data = table.getLong(entry + Long.BYTES);
+            if (data != 0 && (table.getLong(entry) ^ data) == key)
+                return data;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result for the given key
+     * @param key the Zobrist key of the position
+     * @param depth the depth the position was searched to
+     * @param bound the bound type of score, EXACT, LOWER or UPPER
+     * @param score the score of the position
+     * @param move the id of the best turn, 0 if none is known
+     */
+    void store(long key, int depth, int bound, int score, int move) {
+        int bucket = bucket(key);
+
+        // replace the entry for the same position if there is one,
+        // otherwise the least valuable entry of the bucket
+        int victim = bucket;
+        int victimWorth = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int entry = bucket + i * ENTRY_SIZE;
+            long data = table.getLong(entry + Long.BYTES);
+            if (data == 0 || (table.getLong(entry) ^ data) == key) {
+                victim = entry;
+                break;
+            }
+
+            int worth = (generation(data) == generation) ? depth(data) : -1;
+            if (worth < victimWorth) {
+                victim = entry;
+                victimWorth = worth;
+            }
+        }
+
+        long data = (score & 0xFFFFFFFFL)
+                | ((long) (move & 0xFFFF) << 32)
+                | ((long) (depth & 0xFF) << 48)
+                | ((long) bound << 56)
+                | ((long) generation << 58);
+        table.putLong(victim, key ^ data);
+        table.putLong(victim + Long.BYTES, data);
+    }
+
+    /**
+     * Returns the score of an entry
+     * @param data the data word returned by probe()
+     * @return the stored score
+     */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /**
+     * Returns the best turn of an entry
+     * @param data the data word returned by probe()
+     * @return the stored id of the turn, 0 if none
+     */
+    static int move(long data) {
+        return (int) (data >>> 32) & 0xFFFF;
+    }
+
+    /**
+     * Returns the depth of an entry
+     * @param data the data word returned by probe()
+     * @return the depth the position was searched to
+     */
+    static int depth(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    /**
+     * Returns the bound type of an entry
+     * @param data the data word returned by probe()
+     * @return EXACT, LOWER or UPPER
+     */
+    static int bound(long data) {
+        return (int) (data >>> 56) & 0x3;
+    }
+
+    /**
+     * Helper method that returns the generation of an entry
+     * @param data the data word of the entry
+     * @return the generation of the search that stored it
+     */
+    private static int generation(long data) {
+        return (int) (data >>> 58) & 0x3F;
+    }
+
+    /**
+     * Helper method that returns the offset of the bucket
+     * a key belongs in
+     * @param key the Zobrist key of the position
+     * @return the byte offset of the bucket in the table
+     */
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) * ENTRY_SIZE * BUCKET_SIZE;
+    }
+}